@@ -29,7 +29,7 @@ import android.widget.ImageView;
 
 import com.bilibili.boxing.demo.R;
 import com.bilibili.boxing.loader.IBoxingCallback;
-import com.bilibili.boxing.loader.IBoxingMediaLoader;
+import com.bilibili.boxing.loader.IBoxingCancelableLoader;
 import com.bilibili.boxing.utils.BoxingFileHelper;
 import com.facebook.cache.disk.DiskCacheConfig;
 import com.facebook.common.executors.UiThreadImmediateExecutorService;
@@ -50,6 +50,8 @@ import com.facebook.imagepipeline.request.ImageRequest;
 import com.facebook.imagepipeline.request.ImageRequestBuilder;
 
 import java.io.File;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * use Fresco(https://github.com/facebook/fresco) to display medias.
@@ -59,12 +61,14 @@ import java.io.File;
  *
  * @author ChenSL
  */
-public class BoxingFrescoLoader implements IBoxingMediaLoader {
+public class BoxingFrescoLoader implements IBoxingCancelableLoader {
     private static final int MAX_DISK_CACHE_VERYLOW_SIZE = 20 * ByteConstants.MB;
     private static final int MAX_DISK_CACHE_LOW_SIZE = 60 * ByteConstants.MB;
     private static final int MAX_DISK_CACHE_SIZE = 100 * ByteConstants.MB;
     private static final String IMAGE_PIPELINE_CACHE_DIR = "ImagePipeLine";
 
+    private final Map<ImageView, DataSource<CloseableReference<CloseableImage>>> mDataSources = new WeakHashMap<>();
+
     public BoxingFrescoLoader(@NonNull Context context) {
         init(context);
     }
@@ -98,13 +102,16 @@ public class BoxingFrescoLoader implements IBoxingMediaLoader {
         ImageRequestBuilder requestBuilder = ImageRequestBuilder.newBuilderWithSource(Uri.parse(finalAbsPath));
         requestBuilder.setResizeOptions(new ResizeOptions(width, height));
         ImageRequest request = requestBuilder.build();
+        cancel(img);
         final DataSource<CloseableReference<CloseableImage>> dataSource =
                 Fresco.getImagePipeline().fetchDecodedImage(request, null);
+        mDataSources.put(img, dataSource);
 
         dataSource.subscribe(new BaseDataSubscriber<CloseableReference<CloseableImage>>() {
 
             @Override
             protected void onNewResultImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+                removeDataSource(img, dataSource);
                 String path = (String) img.getTag(R.string.boxing_app_name);
                 if (path == null || absPath.equals(path)) {
                     if (dataSource.getResult() == null) {
@@ -118,11 +125,27 @@ public class BoxingFrescoLoader implements IBoxingMediaLoader {
 
             @Override
             protected void onFailureImpl(DataSource<CloseableReference<CloseableImage>> dataSource) {
+                removeDataSource(img, dataSource);
                 img.setImageResource(R.drawable.ic_boxing_broken_image);
             }
         }, UiThreadImmediateExecutorService.getInstance());
     }
 
+    @Override
+    public void cancel(@NonNull ImageView img) {
+        DataSource<CloseableReference<CloseableImage>> dataSource = mDataSources.remove(img);
+        // a finished data source holds the displaying bitmap, leave it alone.
+        if (dataSource != null && !dataSource.isFinished()) {
+            dataSource.close();
+        }
+    }
+
+    private void removeDataSource(ImageView img, DataSource<CloseableReference<CloseableImage>> dataSource) {
+        if (mDataSources.get(img) == dataSource) {
+            mDataSources.remove(img);
+        }
+    }
+
     @Override
     public void displayRaw(@NonNull ImageView img, @NonNull String absPath, int width, int height,  IBoxingCallback callback) {
         absPath = "file://" + absPath;
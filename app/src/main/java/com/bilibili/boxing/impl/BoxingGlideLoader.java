@@ -17,25 +17,34 @@
 
 package com.bilibili.boxing.impl;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
 import android.widget.ImageView;
 
 import com.bilibili.boxing.demo.R;
 import com.bilibili.boxing.loader.IBoxingCallback;
-import com.bilibili.boxing.loader.IBoxingMediaLoader;
+import com.bilibili.boxing.loader.IBoxingCancelableLoader;
+import com.bilibili.boxing.loader.IBoxingPrefetchLoader;
 import com.bumptech.glide.BitmapTypeRequest;
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.Request;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.target.Target;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * use https://github.com/bumptech/glide as media loader.
  * can <b>not</b> be used in Production Environment.
  *
  * @author ChenSL
  */
-public class BoxingGlideLoader implements IBoxingMediaLoader {
+public class BoxingGlideLoader implements IBoxingPrefetchLoader, IBoxingCancelableLoader {
+    private final Map<String, Target<GlideDrawable>> mPrefetching = new HashMap<>();
 
     @Override
     public void displayThumbnail(@NonNull ImageView img, @NonNull String absPath, int width, int height) {
@@ -80,4 +89,50 @@ public class BoxingGlideLoader implements IBoxingMediaLoader {
 
     }
 
+    @Override
+    public void cancel(@NonNull ImageView img) {
+        Glide.clear(img);
+    }
+
+    @Override
+    public void prefetchThumbnail(@NonNull Context context, @NonNull final String absPath, int width, int height) {
+        if (mPrefetching.containsKey(absPath)) {
+            return;
+        }
+        try {
+            Target<GlideDrawable> target = Glide.with(context.getApplicationContext())
+                    .load("file://" + absPath)
+                    .centerCrop()
+                    .priority(Priority.LOW)
+                    .listener(new RequestListener<String, GlideDrawable>() {
+                        @Override
+                        public boolean onException(Exception e, String model, Target<GlideDrawable> target, boolean isFirstResource) {
+                            mPrefetching.remove(absPath);
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(GlideDrawable resource, String model, Target<GlideDrawable> target, boolean isFromMemoryCache, boolean isFirstResource) {
+                            mPrefetching.remove(absPath);
+                            return false;
+                        }
+                    })
+                    .preload(width, height);
+            // a memory cache hit completes the request before preload returns.
+            Request request = target.getRequest();
+            if (request != null && request.isRunning()) {
+                mPrefetching.put(absPath, target);
+            }
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Override
+    public void cancelPrefetch(@NonNull String absPath) {
+        Target<GlideDrawable> target = mPrefetching.remove(absPath);
+        if (target != null) {
+            Glide.clear(target);
+        }
+    }
+
 }
@@ -23,7 +23,7 @@ import android.widget.ImageView;
 
 import com.bilibili.boxing.demo.R;
 import com.bilibili.boxing.loader.IBoxingCallback;
-import com.bilibili.boxing.loader.IBoxingMediaLoader;
+import com.bilibili.boxing.loader.IBoxingCancelableLoader;
 import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.RequestCreator;
@@ -35,7 +35,7 @@ import com.squareup.picasso.Transformation;
  *
  * @author ChenSL
  */
-public class BoxingPicassoLoader implements IBoxingMediaLoader {
+public class BoxingPicassoLoader implements IBoxingCancelableLoader {
 
     @Override
     public void displayThumbnail(@NonNull ImageView img, @NonNull String absPath, int width, int height) {
@@ -68,6 +68,11 @@ public class BoxingPicassoLoader implements IBoxingMediaLoader {
         });
     }
 
+    @Override
+    public void cancel(@NonNull ImageView img) {
+        Picasso.with(img.getContext()).cancelRequest(img);
+    }
+
     private class BitmapTransform implements Transformation {
         private final int mMaxWidth;
         private final int mMaxHeight;
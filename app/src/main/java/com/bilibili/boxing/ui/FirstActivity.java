@@ -20,6 +20,7 @@ package com.bilibili.boxing.ui;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -41,6 +42,7 @@ import com.bilibili.boxing.model.config.BoxingCropOption;
 import com.bilibili.boxing.model.entity.BaseMedia;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
 import com.bilibili.boxing.utils.BoxingFileHelper;
+import com.bilibili.boxing.utils.CompressTask;
 import com.bilibili.boxing.utils.ImageCompressor;
 import com.bilibili.boxing_impl.ui.BoxingActivity;
 import com.bilibili.boxing_impl.ui.BoxingBottomSheetActivity;
@@ -58,6 +60,7 @@ import java.util.Locale;
 public class FirstActivity extends AppCompatActivity implements View.OnClickListener {
     private static final int REQUEST_CODE = 1024;
     private static final int COMPRESS_REQUEST_CODE = 2048;
+    private static final long COMPRESS_MAX_SIZE = 1024 * 1024L;
 
     private RecyclerView mRecyclerView;
     private MediaResultAdapter mAdapter;
@@ -148,19 +151,29 @@ public class FirstActivity extends AppCompatActivity implements View.OnClickList
             if (requestCode == REQUEST_CODE) {
                 mAdapter.setList(medias);
             } else if (requestCode == COMPRESS_REQUEST_CODE) {
-                final List<BaseMedia> imageMedias = new ArrayList<>(1);
                 BaseMedia baseMedia = medias.get(0);
                 if (!(baseMedia instanceof ImageMedia)) {
                     return;
                 }
 
-                final ImageMedia imageMedia = (ImageMedia) baseMedia;
-                // the compress task may need time
-                if (imageMedia.compress(new ImageCompressor(this))) {
-                    imageMedia.removeExif();
-                    imageMedias.add(imageMedia);
-                    mAdapter.setList(imageMedias);
-                }
+                List<ImageMedia> images = new ArrayList<>(1);
+                images.add((ImageMedia) baseMedia);
+                // the compress task may need time, never wait for it in the ui thread.
+                CompressTask.compressAll(new ImageCompressor(this), images, COMPRESS_MAX_SIZE, new CompressTask.Callback() {
+                    @Override
+                    public void onProgress(@NonNull ImageMedia image, boolean success, int finishedCount, int totalCount) {
+                        if (success && !isFinishing()) {
+                            image.removeExif();
+                            List<BaseMedia> imageMedias = new ArrayList<>(1);
+                            imageMedias.add(image);
+                            mAdapter.setList(imageMedias);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(@NonNull List<ImageMedia> images, int successCount) {
+                    }
+                });
 
             }
         }
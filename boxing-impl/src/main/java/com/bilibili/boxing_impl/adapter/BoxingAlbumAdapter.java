@@ -80,8 +80,8 @@ public class BoxingAlbumAdapter extends RecyclerView.Adapter implements View.OnC
             albumViewHolder.mNameTxt.setText(albumName);
             ImageMedia media = (ImageMedia) album.mImageList.get(0);
             if (media != null) {
-                BoxingMediaLoader.getInstance().displayThumbnail(albumViewHolder.mCoverImg, media.getPath(), 50, 50);
                 albumViewHolder.mCoverImg.setTag(R.string.boxing_app_name, media.getPath());
+                BoxingMediaLoader.getInstance().displayThumbnail(albumViewHolder.mCoverImg, media.getPath(), 50, 50);
             }
             albumViewHolder.mLayout.setTag(adapterPos);
             albumViewHolder.mLayout.setOnClickListener(this);
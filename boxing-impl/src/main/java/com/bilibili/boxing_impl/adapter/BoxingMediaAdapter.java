@@ -19,6 +19,9 @@ package com.bilibili.boxing_impl.adapter;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -26,15 +29,20 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.MediaSelection;
 import com.bilibili.boxing.model.config.BoxingConfig;
 import com.bilibili.boxing.model.entity.BaseMedia;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
+import com.bilibili.boxing.utils.BoxingExecutor;
 import com.bilibili.boxing_impl.BoxingResHelper;
 import com.bilibili.boxing_impl.R;
 import com.bilibili.boxing_impl.view.MediaItemLayout;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
 
 
 /**
@@ -45,12 +53,20 @@ import java.util.List;
 public class BoxingMediaAdapter extends RecyclerView.Adapter {
     private static final int CAMERA_TYPE = 0;
     private static final int NORMAL_TYPE = 1;
+    /**
+     * the payload to bind the check overlay only, not the thumbnail.
+     */
+    static final Object PAYLOAD_CHECK = new Object();
+    /**
+     * the lists with more medias are diffed in the worker.
+     */
+    private static final int ASYNC_DIFF_THRESHOLD = 1000;
 
     private int mOffset;
     private boolean mMultiImageMode;
 
     private List<BaseMedia> mMedias;
-    private List<BaseMedia> mSelectedMedias;
+    private MediaSelection mSelection;
     private LayoutInflater mInflater;
     private BoxingConfig mMediaConfig;
     private View.OnClickListener mOnCameraClickListener;
@@ -58,11 +74,15 @@ public class BoxingMediaAdapter extends RecyclerView.Adapter {
     private OnCheckListener mOnCheckListener;
     private OnMediaCheckedListener mOnCheckedListener;
     private int mDefaultRes;
+    /**
+     * changed with the medias, a diff of the former medias is dropped.
+     */
+    private int mMediasVersion;
 
     public BoxingMediaAdapter(Context context) {
         this.mInflater = LayoutInflater.from(context);
         this.mMedias = new ArrayList<>();
-        this.mSelectedMedias = new ArrayList<>(9);
+        this.mSelection = new MediaSelection();
         this.mMediaConfig = BoxingManager.getInstance().getBoxingConfig();
         this.mOffset = mMediaConfig.isNeedCamera() ? 1 : 0;
         this.mMultiImageMode = mMediaConfig.getMode() == BoxingConfig.Mode.MULTI_IMG;
@@ -105,7 +125,7 @@ public class BoxingMediaAdapter extends RecyclerView.Adapter {
             vh.mItemLayout.setMedia(media);
             vh.mItemChecked.setVisibility(mMultiImageMode ? View.VISIBLE : View.GONE);
             if (mMultiImageMode && media instanceof ImageMedia) {
-                vh.mItemLayout.setChecked(((ImageMedia) media).isSelected());
+                vh.mItemLayout.setChecked(mSelection.contains(media));
                 vh.mItemChecked.setTag(R.id.media_layout, vh.mItemLayout);
                 vh.mItemChecked.setTag(media);
                 vh.mItemChecked.setOnClickListener(mOnCheckListener);
@@ -113,6 +133,38 @@ public class BoxingMediaAdapter extends RecyclerView.Adapter {
         }
     }
 
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List payloads) {
+        if (holder instanceof ImageViewHolder && isCheckPayloads(payloads)) {
+            BaseMedia media = mMedias.get(position - mOffset);
+            if (mMultiImageMode && media instanceof ImageMedia) {
+                ((ImageViewHolder) holder).mItemLayout.setChecked(mSelection.contains(media));
+            }
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        if (holder instanceof ImageViewHolder) {
+            ((ImageViewHolder) holder).mItemLayout.recycle();
+        }
+    }
+
+    private boolean isCheckPayloads(List payloads) {
+        if (payloads == null || payloads.isEmpty()) {
+            return false;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_CHECK) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public long getItemId(int position) {
         return position;
@@ -135,27 +187,158 @@ public class BoxingMediaAdapter extends RecyclerView.Adapter {
         mOnMediaClickListener = onMediaClickListener;
     }
 
+    /**
+     * @return a copy of the selected medias in the order of selecting, change them through {@link #getSelection()}.
+     */
     public List<BaseMedia> getSelectedMedias() {
-        return mSelectedMedias;
+        return mSelection.getMedias();
+    }
+
+    /**
+     * @return the selection the check overlays are bound by, check and uncheck a media through it.
+     */
+    public MediaSelection getSelection() {
+        return mSelection;
     }
 
+    /**
+     * check the medias in the selected ones by id and uncheck the others,
+     * only the medias checked or unchecked are bound again, with {@link #PAYLOAD_CHECK}.
+     */
     public void setSelectedMedias(List<BaseMedia> selectedMedias) {
         if (selectedMedias == null) {
             return;
         }
-        mSelectedMedias.clear();
-        mSelectedMedias.addAll(selectedMedias);
-        notifyDataSetChanged();
+        MediaSelection oldSelection = new MediaSelection(mSelection);
+        mSelection.set(selectedMedias);
+        diffMedias(oldSelection);
+    }
+
+    /**
+     * diff the checked states of the current medias by {@link #getSelection()} with the old ones,
+     * in the worker if there are more than {@link #ASYNC_DIFF_THRESHOLD}.
+     *
+     * @param oldSelection the selection the current medias are bound by.
+     */
+    private void diffMedias(@NonNull final MediaSelection oldSelection) {
+        final List<BaseMedia> medias = new ArrayList<>(mMedias);
+        final MediaSelection newSelection = new MediaSelection(mSelection);
+        final int version = ++mMediasVersion;
+        if (medias.size() > ASYNC_DIFF_THRESHOLD) {
+            // off the decode pool, not to hold back the thumbnails of the visible items.
+            FutureTask<Void> task = BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.QUERY,
+                    BoxingExecutor.Priority.NORMAL, new Runnable() {
+                @Override
+                public void run() {
+                    boolean[] oldChecked = getCheckedStates(medias, oldSelection);
+                    boolean[] newChecked = getCheckedStates(medias, newSelection);
+                    final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                            new MediaDiffCallback(medias, oldChecked, medias, newChecked));
+                    BoxingExecutor.getInstance().runUI(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (version == mMediasVersion) {
+                                applyDiff(result);
+                            } else {
+                                // the medias changed while diffing, check the current ones again.
+                                diffMedias(oldSelection);
+                            }
+                        }
+                    });
+                }
+            });
+            if (task != null) {
+                return;
+            }
+        }
+        boolean[] oldChecked = getCheckedStates(medias, oldSelection);
+        boolean[] newChecked = getCheckedStates(medias, newSelection);
+        applyDiff(DiffUtil.calculateDiff(new MediaDiffCallback(medias, oldChecked, medias, newChecked)));
+    }
+
+    /**
+     * the selection may be changed by a check while diffing, the changed items are bound by the live one.
+     */
+    private void applyDiff(DiffUtil.DiffResult result) {
+        mMediasVersion++;
+        result.dispatchUpdatesTo(new OffsetUpdateCallback());
+    }
+
+    private static boolean[] getCheckedStates(List<BaseMedia> medias, MediaSelection selection) {
+        boolean[] result = new boolean[medias.size()];
+        for (int i = 0; i < result.length; i++) {
+            BaseMedia media = medias.get(i);
+            result[i] = media instanceof ImageMedia && selection.contains(media);
+        }
+        return result;
     }
 
     public void addAllData(@NonNull List<BaseMedia> data) {
+        mMediasVersion++;
         int oldSize = mMedias.size();
         this.mMedias.addAll(data);
         int size = data.size();
         notifyItemRangeInserted(oldSize, size);
     }
 
+    /**
+     * put the new medias in front and remove the deleted ones, notifying the changed ranges only.
+     *
+     * @param inserted   the new medias in front of the current ones.
+     * @param removedIds the ids of the deleted medias.
+     */
+    public void updateMedias(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds) {
+        mMediasVersion++;
+        if (!removedIds.isEmpty()) {
+            Set<String> ids = new HashSet<>(removedIds);
+            int rangeEnd = -1;
+            int rangeCount = 0;
+            // from the end, so the positions in front are not shifted.
+            for (int i = mMedias.size() - 1; i >= 0; i--) {
+                BaseMedia media = mMedias.get(i);
+                if (!ids.contains(media.getId())) {
+                    continue;
+                }
+                if (rangeCount > 0 && i + 1 != rangeEnd - rangeCount + 1) {
+                    notifyItemRangeRemoved(rangeEnd - rangeCount + 1 + mOffset, rangeCount);
+                    rangeCount = 0;
+                }
+                mMedias.remove(i);
+                mSelection.remove(media);
+                if (rangeCount == 0) {
+                    rangeEnd = i;
+                }
+                rangeCount++;
+            }
+            if (rangeCount > 0) {
+                notifyItemRangeRemoved(rangeEnd - rangeCount + 1 + mOffset, rangeCount);
+            }
+        }
+        if (!inserted.isEmpty()) {
+            mMedias.addAll(0, inserted);
+            notifyItemRangeInserted(mOffset, inserted.size());
+        }
+    }
+
+    /**
+     * the position of the media bound to the holder in {@link #getAllMedias()},
+     * the position set in binding is out of date after {@link #updateMedias(List, List)}.
+     */
+    public int getMediaPosition(@NonNull RecyclerView.ViewHolder holder) {
+        return holder.getAdapterPosition() - mOffset;
+    }
+
+    /**
+     * @return the media at the position of the adapter, null for the camera item or out of range.
+     */
+    @Nullable
+    public BaseMedia getMedia(int adapterPosition) {
+        int pos = adapterPosition - mOffset;
+        return pos >= 0 && pos < mMedias.size() ? mMedias.get(pos) : null;
+    }
+
     public void clearData() {
+        mMediasVersion++;
         int size = mMedias.size();
         this.mMedias.clear();
         notifyItemRangeRemoved(0, size);
@@ -187,6 +370,32 @@ public class BoxingMediaAdapter extends RecyclerView.Adapter {
         }
     }
 
+    /**
+     * notify the updates of the medias, after the camera item if there is one.
+     */
+    private class OffsetUpdateCallback implements ListUpdateCallback {
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position + mOffset, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position + mOffset, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition + mOffset, toPosition + mOffset);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(position + mOffset, count, payload);
+        }
+    }
+
     private class OnCheckListener implements View.OnClickListener {
 
         @Override
@@ -0,0 +1,78 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing_impl.adapter;
+
+import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+
+import com.bilibili.boxing.model.entity.BaseMedia;
+
+import java.util.List;
+
+/**
+ * The diff of two lists of medias with the checked state of each, a media only checked or unchecked
+ * is changed with {@link BoxingMediaAdapter#PAYLOAD_CHECK}, so only its check overlay is bound again.
+ *
+ * @author ChenSL
+ */
+class MediaDiffCallback extends DiffUtil.Callback {
+    private final List<BaseMedia> mOldMedias;
+    private final boolean[] mOldChecked;
+    private final List<BaseMedia> mNewMedias;
+    private final boolean[] mNewChecked;
+
+    MediaDiffCallback(@NonNull List<BaseMedia> oldMedias, @NonNull boolean[] oldChecked,
+                      @NonNull List<BaseMedia> newMedias, @NonNull boolean[] newChecked) {
+        mOldMedias = oldMedias;
+        mOldChecked = oldChecked;
+        mNewMedias = newMedias;
+        mNewChecked = newChecked;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldMedias.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewMedias.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        BaseMedia oldMedia = mOldMedias.get(oldItemPosition);
+        BaseMedia newMedia = mNewMedias.get(newItemPosition);
+        return oldMedia == newMedia || TextUtils.equals(oldMedia.getId(), newMedia.getId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldChecked[oldItemPosition] == mNewChecked[newItemPosition]
+                && TextUtils.equals(mOldMedias.get(oldItemPosition).getPath(), mNewMedias.get(newItemPosition).getPath());
+    }
+
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        if (TextUtils.equals(mOldMedias.get(oldItemPosition).getPath(), mNewMedias.get(newItemPosition).getPath())) {
+            return BoxingMediaAdapter.PAYLOAD_CHECK;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing_impl.adapter;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.view.View;
+
+import com.bilibili.boxing.BoxingMediaLoader;
+import com.bilibili.boxing.model.entity.BaseMedia;
+import com.bilibili.boxing_impl.view.MediaItemLayout;
+
+/**
+ * Look ahead of the scrolling of the media grid by its velocity: load the next page before the last row shows,
+ * and prefetch the thumbnails of the rows ahead through {@link BoxingMediaLoader#prefetchThumbnail}.
+ * The prefetching of the rows scrolled out of range is cancelled.
+ *
+ * @author ChenSL
+ */
+public class MediaPrefetcher extends RecyclerView.OnScrollListener {
+    private static final int MIN_PREFETCH_ROWS = 2;
+    private static final int MAX_PREFETCH_ROWS = 10;
+    /**
+     * the rows scrolled in this time at the current velocity are prefetched.
+     */
+    private static final long LOOK_AHEAD_MS = 500;
+    /**
+     * the scroll events farther apart start the velocity again.
+     */
+    private static final long MAX_SCROLL_INTERVAL_MS = 100;
+    private static final float VELOCITY_SMOOTHING = 0.4f;
+
+    private final Context mContext;
+    private final BoxingMediaAdapter mAdapter;
+    private final PageLoader mPageLoader;
+    private final int mThumbnailSize;
+    /**
+     * the paths being prefetched by the positions of the adapter.
+     */
+    private final SparseArray<String> mPrefetching = new SparseArray<>();
+    private long mLastScrollTime;
+    private float mVelocity;
+
+    public interface PageLoader {
+        boolean hasNextPage();
+
+        boolean canLoadNextPage();
+
+        void onLoadNextPage();
+    }
+
+    public MediaPrefetcher(@NonNull Context context, @NonNull BoxingMediaAdapter adapter, @NonNull PageLoader pageLoader) {
+        mContext = context.getApplicationContext();
+        mAdapter = adapter;
+        mPageLoader = pageLoader;
+        mThumbnailSize = MediaItemLayout.getThumbnailSize(context);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            mVelocity = 0;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (!(recyclerView.getLayoutManager() instanceof GridLayoutManager) || recyclerView.getChildCount() == 0) {
+            return;
+        }
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        int itemCount = mAdapter.getItemCount();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+        updateVelocity(dy);
+        int rangeSize = getPrefetchRows(recyclerView.getChildAt(0)) * layoutManager.getSpanCount();
+        int start;
+        int end;
+        if (dy < 0) {
+            start = Math.max(0, first - rangeSize);
+            end = first - 1;
+        } else {
+            start = last + 1;
+            end = Math.min(itemCount - 1, last + rangeSize);
+        }
+        if ((last == itemCount - 1 || dy > 0 && last + rangeSize >= itemCount - 1)
+                && mPageLoader.hasNextPage() && mPageLoader.canLoadNextPage()) {
+            mPageLoader.onLoadNextPage();
+        }
+        cancelOutOfRange(Math.min(start, first), Math.max(end, last), first, last);
+        if (dy != 0) {
+            prefetch(start, end);
+        }
+    }
+
+    /**
+     * cancel all the prefetching, such as the medias are cleared.
+     */
+    public void cancelAll() {
+        for (int i = 0; i < mPrefetching.size(); i++) {
+            BoxingMediaLoader.getInstance().cancelPrefetch(mPrefetching.valueAt(i));
+        }
+        mPrefetching.clear();
+        mVelocity = 0;
+    }
+
+    private void updateVelocity(int dy) {
+        long now = SystemClock.uptimeMillis();
+        long interval = now - mLastScrollTime;
+        mLastScrollTime = now;
+        if (interval <= 0 || interval > MAX_SCROLL_INTERVAL_MS) {
+            mVelocity = 0;
+            return;
+        }
+        float velocity = dy * 1000f / interval;
+        mVelocity = mVelocity == 0 ? velocity : mVelocity + (velocity - mVelocity) * VELOCITY_SMOOTHING;
+    }
+
+    private int getPrefetchRows(View child) {
+        int rowHeight = child.getHeight();
+        if (rowHeight <= 0) {
+            return MIN_PREFETCH_ROWS;
+        }
+        int rows = (int) Math.ceil(Math.abs(mVelocity) * LOOK_AHEAD_MS / 1000 / rowHeight);
+        return Math.max(MIN_PREFETCH_ROWS, Math.min(MAX_PREFETCH_ROWS, rows));
+    }
+
+    /**
+     * the visible cells are displaying their own, only the ones out of the window are cancelled.
+     */
+    private void cancelOutOfRange(int windowStart, int windowEnd, int first, int last) {
+        for (int i = mPrefetching.size() - 1; i >= 0; i--) {
+            int position = mPrefetching.keyAt(i);
+            if (position >= first && position <= last) {
+                mPrefetching.removeAt(i);
+            } else if (position < windowStart || position > windowEnd) {
+                BoxingMediaLoader.getInstance().cancelPrefetch(mPrefetching.valueAt(i));
+                mPrefetching.removeAt(i);
+            }
+        }
+    }
+
+    private void prefetch(int start, int end) {
+        BoxingMediaLoader loader = BoxingMediaLoader.getInstance();
+        for (int position = start; position <= end; position++) {
+            if (mPrefetching.get(position) != null) {
+                continue;
+            }
+            BaseMedia media = mAdapter.getMedia(position);
+            String path = media == null ? null : MediaItemLayout.getCoverPath(media);
+            if (TextUtils.isEmpty(path)) {
+                continue;
+            }
+            if (!loader.prefetchThumbnail(mContext, path, mThumbnailSize, mThumbnailSize)) {
+                // the loader can not prefetch.
+                return;
+            }
+            mPrefetching.put(position, path);
+        }
+    }
+}
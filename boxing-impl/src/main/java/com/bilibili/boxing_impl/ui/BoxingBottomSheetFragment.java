@@ -38,6 +38,7 @@ import com.bilibili.boxing.presenter.PickerContract;
 import com.bilibili.boxing.utils.BoxingFileHelper;
 import com.bilibili.boxing_impl.R;
 import com.bilibili.boxing_impl.adapter.BoxingMediaAdapter;
+import com.bilibili.boxing_impl.adapter.MediaPrefetcher;
 import com.bilibili.boxing_impl.view.HackyGridLayoutManager;
 import com.bilibili.boxing_impl.view.SpacesItemDecoration;
 
@@ -59,6 +60,7 @@ public class BoxingBottomSheetFragment extends AbsBoxingViewFragment implements
     private boolean mIsCamera;
 
     private BoxingMediaAdapter mMediaAdapter;
+    private MediaPrefetcher mPrefetcher;
     private ProgressDialog mDialog;
     private RecyclerView mRecycleView;
     private TextView mEmptyTxt;
@@ -92,7 +94,8 @@ public class BoxingBottomSheetFragment extends AbsBoxingViewFragment implements
         mRecycleView.setLayoutManager(gridLayoutManager);
         mRecycleView.addItemDecoration(new SpacesItemDecoration(getResources().getDimensionPixelOffset(R.dimen.boxing_media_margin), GRID_COUNT));
         mRecycleView.setAdapter(mMediaAdapter);
-        mRecycleView.addOnScrollListener(new ScrollListener());
+        mPrefetcher = new MediaPrefetcher(getContext(), mMediaAdapter, new PageLoader());
+        mRecycleView.addOnScrollListener(mPrefetcher);
         mMediaAdapter.setOnMediaClickListener(new OnMediaClickListener());
         mMediaAdapter.setOnCameraClickListener(new OnCameraClickListener());
         view.findViewById(R.id.finish_txt).setOnClickListener(this);
@@ -136,6 +139,18 @@ public class BoxingBottomSheetFragment extends AbsBoxingViewFragment implements
         mMediaAdapter.addAllData(medias);
     }
 
+    @Override
+    public void updateMedia(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds) {
+        // the positions being prefetched are shifted.
+        cancelPrefetch();
+        mMediaAdapter.updateMedias(inserted, removedIds);
+        if (isEmptyData(mMediaAdapter.getAllMedias())) {
+            showEmptyData();
+        } else {
+            showData();
+        }
+    }
+
     private boolean isEmptyData(List<BaseMedia> medias) {
         return medias.isEmpty() && !BoxingManager.getInstance().getBoxingConfig().isNeedCamera();
     }
@@ -194,9 +209,22 @@ public class BoxingBottomSheetFragment extends AbsBoxingViewFragment implements
 
     @Override
     public void clearMedia() {
+        cancelPrefetch();
         mMediaAdapter.clearData();
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        cancelPrefetch();
+    }
+
+    private void cancelPrefetch() {
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
+    }
+
 
     @Override
     public void onClick(View v) {
@@ -229,19 +257,21 @@ public class BoxingBottomSheetFragment extends AbsBoxingViewFragment implements
         }
     }
 
-    private class ScrollListener extends RecyclerView.OnScrollListener {
+    private class PageLoader implements MediaPrefetcher.PageLoader {
 
         @Override
-        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
-            final int childCount = recyclerView.getChildCount();
-            if (childCount > 0) {
-                View lastChild = recyclerView.getChildAt(childCount - 1);
-                RecyclerView.Adapter outerAdapter = recyclerView.getAdapter();
-                int lastVisible = recyclerView.getChildAdapterPosition(lastChild);
-                if (lastVisible == outerAdapter.getItemCount() - 1 && hasNextPage() && canLoadNextPage()) {
-                    onLoadNextPage();
-                }
-            }
+        public boolean hasNextPage() {
+            return BoxingBottomSheetFragment.this.hasNextPage();
+        }
+
+        @Override
+        public boolean canLoadNextPage() {
+            return BoxingBottomSheetFragment.this.canLoadNextPage();
+        }
+
+        @Override
+        public void onLoadNextPage() {
+            BoxingBottomSheetFragment.this.onLoadNextPage();
         }
     }
 
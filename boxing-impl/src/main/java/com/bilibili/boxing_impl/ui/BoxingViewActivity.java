@@ -35,6 +35,7 @@ import android.widget.Toast;
 import com.bilibili.boxing.AbsBoxingViewActivity;
 import com.bilibili.boxing.Boxing;
 import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.MediaSelection;
 import com.bilibili.boxing.model.entity.BaseMedia;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
 import com.bilibili.boxing.model.task.IMediaTask;
@@ -72,7 +73,7 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
     private ImageMedia mCurrentImageItem;
     private Button mOkBtn;
     private ArrayList<BaseMedia> mImages;
-    private ArrayList<BaseMedia> mSelectedImages;
+    private MediaSelection mSelection;
     private MenuItem mSelectedMenuItem;
 
     @Override
@@ -99,15 +100,17 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
     }
 
     private void initData() {
-        mSelectedImages = getSelectedImages();
+        ArrayList<BaseMedia> selectedImages = getSelectedImages();
+        mSelection = new MediaSelection();
+        mSelection.set(selectedImages);
         mAlbumId = getAlbumId();
         mStartPos = getStartPos();
         mNeedLoading = BoxingManager.getInstance().getBoxingConfig().isNeedLoading();
         mNeedEdit = BoxingManager.getInstance().getBoxingConfig().isNeedEdit();
         mMaxCount = getMaxCount();
         mImages = new ArrayList<>();
-        if (!mNeedLoading && mSelectedImages != null) {
-            mImages.addAll(mSelectedImages);
+        if (!mNeedLoading && selectedImages != null) {
+            mImages.addAll(selectedImages);
         }
     }
 
@@ -134,8 +137,8 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
 
     private void setOkTextNumber() {
         if (mNeedEdit) {
-            int selectedSize = mSelectedImages.size();
-            int size = Math.max(mSelectedImages.size(), mMaxCount);
+            int selectedSize = mSelection.size();
+            int size = Math.max(selectedSize, mMaxCount);
             mOkBtn.setText(getString(R.string.boxing_image_preview_ok_fmt, String.valueOf(selectedSize)
                     , String.valueOf(size)));
             mOkBtn.setEnabled(selectedSize > 0);
@@ -144,7 +147,7 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
 
     private void finishByBackPressed(boolean value) {
         Intent intent = new Intent();
-        intent.putParcelableArrayListExtra(Boxing.EXTRA_SELECTED_MEDIA, mSelectedImages);
+        intent.putParcelableArrayListExtra(Boxing.EXTRA_SELECTED_MEDIA, mSelection.getMedias());
         intent.putExtra(EXTRA_TYPE_BACK, value);
         setResult(RESULT_OK, intent);
         finish();
@@ -156,11 +159,7 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
         if (mNeedEdit) {
             getMenuInflater().inflate(R.menu.activity_boxing_image_viewer, menu);
             mSelectedMenuItem = menu.findItem(R.id.menu_image_item_selected);
-            if (mCurrentImageItem != null) {
-                setMenuIcon(mCurrentImageItem.isSelected());
-            } else {
-                setMenuIcon(false);
-            }
+            setMenuIcon(mSelection.contains(mCurrentImageItem));
             return true;
         }
         return false;
@@ -173,38 +172,29 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
             if (mCurrentImageItem == null) {
                 return false;
             }
-            if (mSelectedImages.size() >= mMaxCount && !mCurrentImageItem.isSelected()) {
+            boolean isSelected = mSelection.contains(mCurrentImageItem);
+            if (mSelection.size() >= mMaxCount && !isSelected) {
                 String warning = getString(R.string.boxing_max_image_over_fmt, mMaxCount);
                 Toast.makeText(this, warning, Toast.LENGTH_SHORT).show();
                 return true;
             }
-            if (mCurrentImageItem.isSelected()) {
-                cancelImage();
+            if (isSelected) {
+                mSelection.remove(mCurrentImageItem);
             } else {
-                if (!mSelectedImages.contains(mCurrentImageItem)) {
-                    if (mCurrentImageItem.isGifOverSize()) {
-                        Toast.makeText(getApplicationContext(), R.string.boxing_gif_too_big, Toast.LENGTH_SHORT).show();
-                        return true;
-                    }
-                    mCurrentImageItem.setSelected(true);
-                    mSelectedImages.add(mCurrentImageItem);
+                if (mCurrentImageItem.isGifOverSize()) {
+                    Toast.makeText(getApplicationContext(), R.string.boxing_gif_too_big, Toast.LENGTH_SHORT).show();
+                    return true;
                 }
+                mSelection.add(mCurrentImageItem);
             }
             setOkTextNumber();
-            setMenuIcon(mCurrentImageItem.isSelected());
+            setMenuIcon(!isSelected);
             return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
-    private void cancelImage() {
-        if (mSelectedImages.contains(mCurrentImageItem)) {
-            mSelectedImages.remove(mCurrentImageItem);
-        }
-        mCurrentImageItem.setSelected(false);
-    }
-
 
     private void setMenuIcon(boolean isSelected) {
         if (mNeedEdit) {
@@ -215,13 +205,13 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
     @Override
     public void startLoading() {
         if (!mNeedLoading) {
-            mCurrentImageItem = (ImageMedia) mSelectedImages.get(mStartPos);
+            mCurrentImageItem = (ImageMedia) mImages.get(mStartPos);
             mToolbar.setTitle(getString(R.string.boxing_image_preview_title_fmt, String.valueOf(mStartPos + 1)
-                    , String.valueOf(mSelectedImages.size())));
+                    , String.valueOf(mImages.size())));
             mProgressBar.setVisibility(View.GONE);
             mGallery.setVisibility(View.VISIBLE);
             mAdapter.setMedias(mImages);
-            if (mStartPos > 0 && mStartPos < mSelectedImages.size()) {
+            if (mStartPos > 0 && mStartPos < mImages.size()) {
                 mGallery.setCurrentItem(mStartPos, false);
             }
         } else {
@@ -242,7 +232,6 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
         }
         mImages.addAll(medias);
         mAdapter.notifyDataSetChanged();
-        checkSelectedMedia(mImages, mSelectedImages);
         setupGallery();
 
         if (mToolbar != null && mNeedAllCount) {
@@ -281,9 +270,7 @@ public class BoxingViewActivity extends AbsBoxingViewActivity {
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
-        if (mSelectedImages != null) {
-            outState.putParcelableArrayList(Boxing.EXTRA_SELECTED_MEDIA, mSelectedImages);
-        }
+        outState.putParcelableArrayList(Boxing.EXTRA_SELECTED_MEDIA, mSelection.getMedias());
         outState.putString(Boxing.EXTRA_ALBUM_ID, mAlbumId);
         super.onSaveInstanceState(outState);
     }
@@ -41,6 +41,7 @@ import android.widget.Toast;
 import com.bilibili.boxing.AbsBoxingViewFragment;
 import com.bilibili.boxing.Boxing;
 import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.MediaSelection;
 import com.bilibili.boxing.model.config.BoxingConfig;
 import com.bilibili.boxing.model.entity.AlbumEntity;
 import com.bilibili.boxing.model.entity.BaseMedia;
@@ -50,6 +51,7 @@ import com.bilibili.boxing_impl.R;
 import com.bilibili.boxing_impl.WindowManagerHelper;
 import com.bilibili.boxing_impl.adapter.BoxingAlbumAdapter;
 import com.bilibili.boxing_impl.adapter.BoxingMediaAdapter;
+import com.bilibili.boxing_impl.adapter.MediaPrefetcher;
 import com.bilibili.boxing_impl.view.HackyGridLayoutManager;
 import com.bilibili.boxing_impl.view.MediaItemLayout;
 import com.bilibili.boxing_impl.view.SpacesItemDecoration;
@@ -78,6 +80,7 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
     private Button mOkBtn;
     private RecyclerView mRecycleView;
     private BoxingMediaAdapter mMediaAdapter;
+    private MediaPrefetcher mPrefetcher;
     private BoxingAlbumAdapter mAlbumWindowAdapter;
     private ProgressDialog mDialog;
     private TextView mEmptyTxt;
@@ -167,7 +170,8 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
         mMediaAdapter.setOnCheckedListener(new OnMediaCheckedListener());
         mMediaAdapter.setOnMediaClickListener(new OnMediaClickListener());
         mRecycleView.setAdapter(mMediaAdapter);
-        mRecycleView.addOnScrollListener(new ScrollListener());
+        mPrefetcher = new MediaPrefetcher(getContext(), mMediaAdapter, new PageLoader());
+        mRecycleView.addOnScrollListener(mPrefetcher);
     }
 
     @Override
@@ -178,8 +182,21 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
             return;
         }
         showData();
+        // the page is checked by the selection of the adapter.
         mMediaAdapter.addAllData(medias);
-        checkSelectedMedia(medias, mMediaAdapter.getSelectedMedias());
+    }
+
+    @Override
+    public void updateMedia(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds) {
+        // the positions being prefetched are shifted.
+        cancelPrefetch();
+        mMediaAdapter.updateMedias(inserted, removedIds);
+        updateMultiPickerLayoutState(mMediaAdapter.getSelectedMedias());
+        if (isEmptyData(mMediaAdapter.getAllMedias())) {
+            showEmptyData();
+        } else {
+            showData();
+        }
     }
 
     private boolean isEmptyData(List<BaseMedia> medias) {
@@ -215,9 +232,22 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
 
     @Override
     public void clearMedia() {
+        cancelPrefetch();
         mMediaAdapter.clearData();
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        cancelPrefetch();
+    }
+
+    private void cancelPrefetch() {
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
+    }
+
     private void updateMultiPickerLayoutState(List<BaseMedia> medias) {
         updateOkBtnState(medias);
         updatePreviewBtnState(medias);
@@ -290,23 +320,17 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
             mIsPreview = false;
             boolean isBackClick = data.getBooleanExtra(BoxingViewActivity.EXTRA_TYPE_BACK, false);
             List<BaseMedia> selectedMedias = data.getParcelableArrayListExtra(Boxing.EXTRA_SELECTED_MEDIA);
-            onViewActivityRequest(selectedMedias, mMediaAdapter.getAllMedias(), isBackClick);
             if (isBackClick) {
+                // the adapter checks the medias and rebinds the changed check overlays only.
                 mMediaAdapter.setSelectedMedias(selectedMedias);
+            } else {
+                onFinish(selectedMedias);
             }
             updateMultiPickerLayoutState(selectedMedias);
         }
 
     }
 
-    private void onViewActivityRequest(List<BaseMedia> selectedMedias, List<BaseMedia> allMedias, boolean isBackClick) {
-        if (isBackClick) {
-            checkSelectedMedia(allMedias, selectedMedias);
-        } else {
-            onFinish(selectedMedias);
-        }
-    }
-
 
     @Override
     public void onCameraActivityResult(int requestCode, int resultCode) {
@@ -389,19 +413,21 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
         }
     }
 
-    private class ScrollListener extends RecyclerView.OnScrollListener {
+    private class PageLoader implements MediaPrefetcher.PageLoader {
 
         @Override
-        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
-            final int childCount = recyclerView.getChildCount();
-            if (childCount > 0) {
-                View lastChild = recyclerView.getChildAt(childCount - 1);
-                RecyclerView.Adapter outerAdapter = recyclerView.getAdapter();
-                int lastVisible = recyclerView.getChildAdapterPosition(lastChild);
-                if (lastVisible == outerAdapter.getItemCount() - 1 && hasNextPage() && canLoadNextPage()) {
-                    onLoadNextPage();
-                }
-            }
+        public boolean hasNextPage() {
+            return BoxingViewFragment.this.hasNextPage();
+        }
+
+        @Override
+        public boolean canLoadNextPage() {
+            return BoxingViewFragment.this.canLoadNextPage();
+        }
+
+        @Override
+        public void onLoadNextPage() {
+            BoxingViewFragment.this.onLoadNextPage();
         }
     }
 
@@ -410,7 +436,8 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
         @Override
         public void onClick(View v) {
             BaseMedia media = (BaseMedia) v.getTag();
-            int pos = (int) v.getTag(R.id.media_item_check);
+            RecyclerView.ViewHolder holder = mRecycleView.findContainingViewHolder(v);
+            int pos = holder != null ? mMediaAdapter.getMediaPosition(holder) : (int) v.getTag(R.id.media_item_check);
             BoxingConfig.Mode mode = BoxingManager.getInstance().getBoxingConfig().getMode();
             if (mode == BoxingConfig.Mode.SINGLE_IMG) {
                 singleImageClick(media);
@@ -472,30 +499,25 @@ public class BoxingViewFragment extends AbsBoxingViewFragment implements View.On
                 return;
             }
             ImageMedia photoMedia = (ImageMedia) iMedia;
-            boolean isSelected = !photoMedia.isSelected();
+            MediaSelection selection = mMediaAdapter.getSelection();
+            boolean isSelected = !selection.contains(photoMedia);
             MediaItemLayout layout = (MediaItemLayout) view;
-            List<BaseMedia> selectedMedias = mMediaAdapter.getSelectedMedias();
             if (isSelected) {
-                if (selectedMedias.size() >= mMaxCount) {
+                if (selection.size() >= mMaxCount) {
                     String warning = getString(R.string.boxing_too_many_picture_fmt, mMaxCount);
                     Toast.makeText(getActivity(), warning, Toast.LENGTH_SHORT).show();
                     return;
                 }
-                if (!selectedMedias.contains(photoMedia)) {
-                    if (photoMedia.isGifOverSize()) {
-                        Toast.makeText(getActivity(), R.string.boxing_gif_too_big, Toast.LENGTH_SHORT).show();
-                        return;
-                    }
-                    selectedMedias.add(photoMedia);
+                if (photoMedia.isGifOverSize()) {
+                    Toast.makeText(getActivity(), R.string.boxing_gif_too_big, Toast.LENGTH_SHORT).show();
+                    return;
                 }
+                selection.add(photoMedia);
             } else {
-                if (selectedMedias.size() >= 1 && selectedMedias.contains(photoMedia)) {
-                    selectedMedias.remove(photoMedia);
-                }
+                selection.remove(photoMedia);
             }
-            photoMedia.setSelected(isSelected);
             layout.setChecked(isSelected);
-            updateMultiPickerLayoutState(selectedMedias);
+            updateMultiPickerLayoutState(selection.getMedias());
         }
     }
 
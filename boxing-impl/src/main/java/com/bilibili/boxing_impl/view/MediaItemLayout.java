@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
@@ -98,7 +99,27 @@ public class MediaItemLayout extends FrameLayout {
         mFontLayout.getLayoutParams().height = width;
     }
 
-    private ScreenType getScreenType(Context context) {
+    /**
+     * @return the size of the thumbnails displayed, prefetching them in the same size hits the cache.
+     */
+    public static int getThumbnailSize(@NonNull Context context) {
+        return getScreenType(context).getValue();
+    }
+
+    /**
+     * @return the path the cover of the media is displayed from, null if it is not an image or a video.
+     */
+    @Nullable
+    public static String getCoverPath(BaseMedia media) {
+        if (media instanceof ImageMedia) {
+            return ((ImageMedia) media).getThumbnailPath();
+        } else if (media instanceof VideoMedia) {
+            return media.getPath();
+        }
+        return null;
+    }
+
+    private static ScreenType getScreenType(Context context) {
         int type = context.getResources().getConfiguration().screenLayout & Configuration.SCREENLAYOUT_SIZE_MASK;
         ScreenType result;
         switch (type) {
@@ -147,6 +168,16 @@ public class MediaItemLayout extends FrameLayout {
         BoxingMediaLoader.getInstance().displayThumbnail(mCoverImg, path, mScreenType.getValue(), mScreenType.getValue());
     }
 
+    /**
+     * cancel the loading of the cover, the layout is recycled.
+     * The tag keeps the path, a null one is taken as "display anything" by the loaders.
+     */
+    public void recycle() {
+        if (mCoverImg != null) {
+            BoxingMediaLoader.getInstance().cancel(mCoverImg);
+        }
+    }
+
     @SuppressWarnings("deprecation")
     public void setChecked(boolean isChecked) {
         if (isChecked) {
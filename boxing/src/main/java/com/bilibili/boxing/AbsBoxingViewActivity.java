@@ -66,6 +66,10 @@ public abstract class AbsBoxingViewActivity extends AppCompatActivity implements
     public void showMedia(@Nullable List<BaseMedia> medias, int allCount) {
     }
 
+    @Override
+    public void updateMedia(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds) {
+    }
+
     @Override
     public void showAlbum(@Nullable List<AlbumEntity> albums) {
     }
@@ -40,6 +40,7 @@ import com.bilibili.boxing.model.entity.BaseMedia;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
 import com.bilibili.boxing.presenter.PickerContract;
 import com.bilibili.boxing.utils.CameraPickerHelper;
+import com.bilibili.boxing.utils.MediaStoreWriter;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
@@ -121,6 +122,16 @@ public abstract class AbsBoxingViewFragment extends Fragment implements PickerCo
     public void showMedia(@Nullable List<BaseMedia> medias, int allCount) {
     }
 
+    /**
+     * override this method to update the medias shown when MediaStore changes.
+     *
+     * @param inserted   the new medias in front of the loaded ones.
+     * @param removedIds the ids of the loaded medias being deleted.
+     */
+    @Override
+    public void updateMedia(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds) {
+    }
+
     /**
      * override this method to handle the album.
      * make sure {@link #loadAlbum()} being called first.
@@ -466,8 +477,16 @@ public abstract class AbsBoxingViewFragment extends Fragment implements PickerCo
                 return;
             }
             ImageMedia cameraMedia = new ImageMedia(file);
-            cameraMedia.saveMediaStore(fragment.getAppCr());
-            fragment.onCameraFinish(cameraMedia);
+            // show the shot with its id in MediaStore, or the change of MediaStore brings it again.
+            cameraMedia.saveMediaStore(fragment.getAppCr(), new MediaStoreWriter.Callback() {
+                @Override
+                public void onInserted(@NonNull List<ImageMedia> medias, int insertedCount) {
+                    AbsBoxingViewFragment host = mWr.get();
+                    if (host != null) {
+                        host.onCameraFinish(medias.get(0));
+                    }
+                }
+            });
         }
 
         @Override
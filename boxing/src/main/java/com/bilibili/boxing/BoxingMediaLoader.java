@@ -17,14 +17,19 @@
 
 package com.bilibili.boxing;
 
+import android.content.Context;
 import android.support.annotation.NonNull;
 import android.widget.ImageView;
 
 import com.bilibili.boxing.loader.IBoxingCallback;
+import com.bilibili.boxing.loader.IBoxingCancelableLoader;
 import com.bilibili.boxing.loader.IBoxingMediaLoader;
+import com.bilibili.boxing.loader.IBoxingPrefetchLoader;
+import com.bilibili.boxing.utils.BoxingThumbnailLoader;
 
 /**
  * A loader holding {@link IBoxingMediaLoader} to displayThumbnail medias.
+ * {@link BoxingThumbnailLoader} is used if no loader is inited.
  *
  * @author ChenSL
  */
@@ -44,24 +49,48 @@ public class BoxingMediaLoader {
     }
 
     public void displayThumbnail(@NonNull ImageView img, @NonNull String path, int width, int height) {
-        if (ensureLoader()) {
-            throw new IllegalStateException("init method should be called first");
-        }
-        mLoader.displayThumbnail(img, path, width, height);
+        ensureLoader(img.getContext()).displayThumbnail(img, path, width, height);
     }
 
     public void displayRaw(@NonNull ImageView img, @NonNull String path, int width, int height, IBoxingCallback callback) {
-        if (ensureLoader()) {
-            throw new IllegalStateException("init method should be called first");
+        ensureLoader(img.getContext()).displayRaw(img, path, width, height, callback);
+    }
+
+    /**
+     * cancel the loading for the ImageView if the loader is a {@link IBoxingCancelableLoader}.
+     */
+    public void cancel(@NonNull ImageView img) {
+        if (mLoader instanceof IBoxingCancelableLoader) {
+            ((IBoxingCancelableLoader) mLoader).cancel(img);
+        }
+    }
+
+    /**
+     * @return false if the loader is not a {@link IBoxingPrefetchLoader}.
+     */
+    public boolean prefetchThumbnail(@NonNull Context context, @NonNull String path, int width, int height) {
+        IBoxingMediaLoader loader = ensureLoader(context);
+        if (!(loader instanceof IBoxingPrefetchLoader)) {
+            return false;
+        }
+        ((IBoxingPrefetchLoader) loader).prefetchThumbnail(context, path, width, height);
+        return true;
+    }
+
+    public void cancelPrefetch(@NonNull String path) {
+        if (mLoader instanceof IBoxingPrefetchLoader) {
+            ((IBoxingPrefetchLoader) mLoader).cancelPrefetch(path);
         }
-        mLoader.displayRaw(img, path, width, height, callback);
     }
 
     public IBoxingMediaLoader getLoader() {
         return mLoader;
     }
 
-    private boolean ensureLoader() {
-        return mLoader == null;
+    private IBoxingMediaLoader ensureLoader(Context context) {
+        if (mLoader == null) {
+            mLoader = new BoxingThumbnailLoader(context);
+        }
+        return mLoader;
     }
 }
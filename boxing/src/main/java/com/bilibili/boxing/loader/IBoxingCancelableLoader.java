@@ -0,0 +1,36 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.loader;
+
+import android.support.annotation.NonNull;
+import android.widget.ImageView;
+
+/**
+ * A {@link IBoxingMediaLoader} able to cancel the loading for a ImageView,
+ * so the cells recycled in a fast scrolling do not keep decoding.
+ *
+ * @author ChenSL
+ */
+public interface IBoxingCancelableLoader extends IBoxingMediaLoader {
+    /**
+     * cancel the loading for a ImageView, called when the ImageView is recycled and going to display another media.
+     * the result of the request should not be set to the ImageView any more.
+     *
+     * @param img the ImageView passed to {@link #displayThumbnail} or {@link #displayRaw}.
+     */
+    void cancel(@NonNull ImageView img);
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing.loader;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+/**
+ * A {@link IBoxingMediaLoader} able to load the thumbnails before they are displayed,
+ * so the cells scrolled in find them in the cache.
+ *
+ * @author ChenSL
+ */
+public interface IBoxingPrefetchLoader extends IBoxingMediaLoader {
+    /**
+     * load the thumbnail into the cache with a low priority, no view to display.
+     *
+     * @param absPath the absolute path, the same as the one to {@link #displayThumbnail}.
+     * @param width   the resize with for the image, the same as the one to {@link #displayThumbnail}.
+     * @param height  the resize height for the image, the same as the one to {@link #displayThumbnail}.
+     */
+    void prefetchThumbnail(@NonNull Context context, @NonNull String absPath, int width, int height);
+
+    /**
+     * cancel the prefetching of the path if it is not done, nothing to do if done.
+     */
+    void cancelPrefetch(@NonNull String absPath);
+}
@@ -18,16 +18,28 @@
 package com.bilibili.boxing.model;
 
 import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.provider.MediaStore;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.bilibili.boxing.model.callback.IAlbumTaskCallback;
+import com.bilibili.boxing.model.callback.IMediaChangeCallback;
+import com.bilibili.boxing.model.callback.IMediaChangedListener;
 import com.bilibili.boxing.model.callback.IMediaTaskCallback;
 import com.bilibili.boxing.model.config.BoxingConfig;
+import com.bilibili.boxing.model.task.IMediaPagingTask;
 import com.bilibili.boxing.model.task.IMediaTask;
+import com.bilibili.boxing.model.task.MediaLoadHandle;
+import com.bilibili.boxing.model.task.PageKey;
 import com.bilibili.boxing.model.task.impl.AlbumTask;
 import com.bilibili.boxing.model.task.impl.ImageTask;
 import com.bilibili.boxing.model.task.impl.VideoTask;
 import com.bilibili.boxing.utils.BoxingExecutor;
+import com.bilibili.boxing.utils.BoxingLog;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Manager to load {@link IMediaTask} and {@link AlbumTask}, holding {@link BoxingConfig}.
@@ -38,6 +50,10 @@ public class BoxingManager {
     private static final BoxingManager INSTANCE = new BoxingManager();
 
     private BoxingConfig mConfig;
+    private ContentObserver mMediaObserver;
+    private ContentResolver mObservedResolver;
+    private final AtomicInteger mMediaGeneration = new AtomicInteger();
+    private final CopyOnWriteArrayList<IMediaChangedListener> mMediaChangedListeners = new CopyOnWriteArrayList<>();
 
     private BoxingManager() {
     }
@@ -54,20 +70,134 @@ public class BoxingManager {
         return mConfig;
     }
 
-    public void loadMedia(@NonNull final ContentResolver cr, final int page,
-                          final String id, @NonNull final IMediaTaskCallback callback) {
-        final IMediaTask task = mConfig.isVideoMode() ? new VideoTask() : new ImageTask();
-        BoxingExecutor.getInstance().runWorker(new Runnable() {
+    /**
+     * a number increased every time the images or videos in MediaStore change,
+     * the data cached from MediaStore is out of date when it changes.<br/>
+     * MediaStore is only observed while there are {@link IMediaChangedListener}s, the number also increases
+     * when the observing starts and stops, since the changes in between are missed.
+     */
+    public int getMediaGeneration(@NonNull ContentResolver cr) {
+        return mMediaGeneration.get();
+    }
+
+    /**
+     * listen to the images and videos in MediaStore, sharing one {@link ContentObserver}.
+     * it is registered with the first listener and unregistered with the last one.
+     */
+    public void addMediaChangedListener(@NonNull ContentResolver cr, @NonNull IMediaChangedListener listener) {
+        mMediaChangedListeners.addIfAbsent(listener);
+        registerMediaObserver(cr);
+    }
+
+    public void removeMediaChangedListener(@NonNull IMediaChangedListener listener) {
+        if (mMediaChangedListeners.remove(listener)) {
+            unregisterMediaObserverIfIdle();
+        }
+    }
+
+    /**
+     * mark the data cached from MediaStore out of date when {@link MediaIndex} finds changes while reconciling,
+     * the pages served from the index before are reloaded by the listeners.
+     */
+    void notifyMediaIndexChanged() {
+        mMediaGeneration.incrementAndGet();
+        for (IMediaChangedListener listener : mMediaChangedListeners) {
+            listener.onMediaIndexChanged();
+        }
+    }
+
+    private synchronized void registerMediaObserver(@NonNull ContentResolver cr) {
+        if (mMediaObserver != null || mMediaChangedListeners.isEmpty()) {
+            return;
+        }
+        ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mMediaGeneration.incrementAndGet();
+                for (IMediaChangedListener listener : mMediaChangedListeners) {
+                    listener.onMediaChanged();
+                }
+            }
+        };
+        mMediaGeneration.incrementAndGet();
+        try {
+            cr.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+            cr.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, observer);
+            mMediaObserver = observer;
+            mObservedResolver = cr;
+        } catch (SecurityException e) {
+            cr.unregisterContentObserver(observer);
+            BoxingLog.d("fail to observe the media store. " + e.getMessage());
+        }
+    }
+
+    private synchronized void unregisterMediaObserverIfIdle() {
+        if (mMediaObserver == null || !mMediaChangedListeners.isEmpty()) {
+            return;
+        }
+        mObservedResolver.unregisterContentObserver(mMediaObserver);
+        mMediaObserver = null;
+        mObservedResolver = null;
+        mMediaGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return the handle to cancel the loading, the result is dropped once it is cancelled.
+     */
+    @NonNull
+    public MediaLoadHandle loadMedia(@NonNull final ContentResolver cr, final int page,
+                                     final String id, @NonNull final IMediaTaskCallback callback) {
+        final IMediaPagingTask task = mConfig.isVideoMode() ? new VideoTask() : new ImageTask();
+        final MediaLoadHandle handle = new MediaLoadHandle(id, page, getMediaGeneration(cr));
+        reconcileMediaIndex(cr);
+        handle.setFuture(BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.QUERY, BoxingExecutor.Priority.VISIBLE, new Runnable() {
             @Override
             public void run() {
-                task.load(cr, page, id, callback);
+                task.load(cr, page, id, callback, handle.getSignal());
+            }
+        }));
+        return handle;
+    }
+
+    /**
+     * load the page after the key, see {@link IMediaPagingTask#loadAfter}.
+     *
+     * @param page the page number of the page after the key, only to identify the handle.
+     * @return the handle to cancel the loading, the result is dropped once it is cancelled.
+     */
+    @NonNull
+    public MediaLoadHandle loadMediaAfter(@NonNull final ContentResolver cr, int page, @Nullable final PageKey key,
+                                          final String id, @NonNull final IMediaTaskCallback callback) {
+        final IMediaPagingTask task = mConfig.isVideoMode() ? new VideoTask() : new ImageTask();
+        final MediaLoadHandle handle = new MediaLoadHandle(id, page, getMediaGeneration(cr));
+        reconcileMediaIndex(cr);
+        handle.setFuture(BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.QUERY, BoxingExecutor.Priority.VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                task.loadAfter(cr, key, id, callback, handle.getSignal());
+            }
+        }));
+        return handle;
+    }
+
+    /**
+     * load the changes since the last id, see {@link IMediaPagingTask#loadChanges(ContentResolver, String, long, String[], IMediaChangeCallback)}.
+     */
+    public void loadMediaChanges(@NonNull final ContentResolver cr, final String id, final long lastId,
+                                 @Nullable final String[] ids, @NonNull final IMediaChangeCallback callback) {
+        final IMediaPagingTask task = mConfig.isVideoMode() ? new VideoTask() : new ImageTask();
+        BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.QUERY, BoxingExecutor.Priority.NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                task.loadChanges(cr, id, lastId, ids, callback);
             }
         });
 
     }
 
     public void loadAlbum(@NonNull final ContentResolver cr, @NonNull final IAlbumTaskCallback callback) {
-        BoxingExecutor.getInstance().runWorker(new Runnable() {
+        reconcileMediaIndex(cr);
+        BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.QUERY, BoxingExecutor.Priority.NORMAL, new Runnable() {
 
             @Override
             public void run() {
@@ -77,4 +207,10 @@ public class BoxingManager {
 
     }
 
+    private void reconcileMediaIndex(@NonNull ContentResolver cr) {
+        if (mConfig == null || !mConfig.isVideoMode()) {
+            MediaIndex.getInstance().reconcileIfNeeded(cr);
+        }
+    }
+
 }
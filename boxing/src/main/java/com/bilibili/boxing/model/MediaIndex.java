@@ -0,0 +1,477 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.provider.MediaStore.Images.Media;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+
+import com.bilibili.boxing.utils.BoxingExecutor;
+import com.bilibili.boxing.utils.BoxingFileHelper;
+import com.bilibili.boxing.utils.BoxingLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An optional copy of the images in MediaStore kept in the cache dir, holding id, path, size, mime type,
+ * width, height and bucket. Once it is built, the first page and the album list are read from it
+ * instead of MediaStore, and it is reconciled with MediaStore in the background by
+ * {@link Media#DATE_MODIFIED} and the ids whenever {@link BoxingManager#getMediaGeneration(ContentResolver)} changes.<br/>
+ * Call {@link #init(Context)} to enable it, the images are always loaded from MediaStore otherwise.
+ *
+ * @author ChenSL
+ */
+public class MediaIndex {
+    private static final MediaIndex INSTANCE = new MediaIndex();
+
+    private static final String DB_NAME = "media_index.db";
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+    private static final String INSERT_SQL = "INSERT OR REPLACE INTO " + MediaIndexHelper.TABLE + " ("
+            + Media._ID + ", " + Media.DATA + ", " + Media.SIZE + ", " + Media.MIME_TYPE + ", "
+            + Media.WIDTH + ", " + Media.HEIGHT + ", " + Media.BUCKET_ID + ", "
+            + Media.BUCKET_DISPLAY_NAME + ", " + Media.DATE_MODIFIED + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private Context mContext;
+    private volatile MediaIndexHelper mHelper;
+    private volatile boolean mIsReady;
+    private final AtomicBoolean mIsReconciling = new AtomicBoolean();
+    private volatile int mReconciledGeneration = -1;
+
+    private MediaIndex() {
+    }
+
+    public static MediaIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * enable the index, the database is opened lazily in the worker thread.
+     */
+    public synchronized void init(@NonNull Context context) {
+        if (mContext == null) {
+            mContext = context.getApplicationContext();
+        }
+    }
+
+    /**
+     * disable the index and close the database, the file is kept for the next {@link #init(Context)}.
+     */
+    public synchronized void release() {
+        if (mHelper != null) {
+            mHelper.close();
+            mHelper = null;
+        }
+        mContext = null;
+        mIsReady = false;
+        mReconciledGeneration = -1;
+    }
+
+    public boolean isEnabled() {
+        return mContext != null;
+    }
+
+    /**
+     * query the index the same way as {@link ContentResolver#query} on {@link Media#EXTERNAL_CONTENT_URI},
+     * MediaStore is queried if the index is not built yet.
+     */
+    @WorkerThread
+    @Nullable
+    public Cursor queryImages(@NonNull ContentResolver cr, String[] projection, String selection,
+                              String[] args, String order) {
+        SQLiteDatabase db = isReady() ? getDatabase() : null;
+        if (db != null) {
+            try {
+                return db.query(MediaIndexHelper.TABLE, projection, selection, args, null, null, order);
+            } catch (SQLException e) {
+                BoxingLog.d("fail to query the media index. " + e.getMessage());
+            }
+        }
+        return cr.query(Media.EXTERNAL_CONTENT_URI, projection, selection, args, order);
+    }
+
+    /**
+     * reconcile the index with MediaStore in the worker thread if MediaStore changed since the last time.
+     */
+    public void reconcileIfNeeded(@NonNull final ContentResolver cr) {
+        if (!isEnabled()) {
+            return;
+        }
+        final int generation = BoxingManager.getInstance().getMediaGeneration(cr);
+        if (generation == mReconciledGeneration || !mIsReconciling.compareAndSet(false, true)) {
+            return;
+        }
+        BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.IO, BoxingExecutor.Priority.BACKGROUND, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (reconcile(cr)) {
+                        BoxingManager.getInstance().notifyMediaIndexChanged();
+                    }
+                    mReconciledGeneration = BoxingManager.getInstance().getMediaGeneration(cr);
+                } catch (SQLException | IllegalArgumentException | SecurityException e) {
+                    BoxingLog.d("fail to reconcile the media index. " + e.getMessage());
+                    mReconciledGeneration = generation;
+                } finally {
+                    mIsReconciling.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * bring the rows modified since the newest one in the index, then sweep the whole index when the
+     * count or the sum of the ids differs from MediaStore, which the rows with an older
+     * {@link Media#DATE_MODIFIED}, such as the copied or the moved ones, are found by.
+     *
+     * @return true if the index is changed.
+     */
+    @WorkerThread
+    boolean reconcile(@NonNull ContentResolver cr) {
+        SQLiteDatabase db = getDatabase();
+        if (db == null) {
+            return false;
+        }
+        long newest = queryLong(db, "SELECT max(" + Media.DATE_MODIFIED + ") FROM " + MediaIndexHelper.TABLE, -1);
+        int changed = upsertNewer(cr, db, newest);
+        long[] storeFingerprint = queryStoreFingerprint(cr);
+        if (storeFingerprint == null || !Arrays.equals(storeFingerprint, queryIndexFingerprint(db))) {
+            changed += sweep(cr, db);
+        }
+        mIsReady = queryLong(db, "SELECT count(*) FROM " + MediaIndexHelper.TABLE, 0) > 0;
+        BoxingLog.d("media index reconciled, changed: " + changed);
+        return changed > 0;
+    }
+
+    @WorkerThread
+    private boolean isReady() {
+        if (!mIsReady) {
+            SQLiteDatabase db = getDatabase();
+            // the first import is in one transaction, a non-empty index is a complete one.
+            mIsReady = db != null && queryLong(db, "SELECT count(*) FROM " + MediaIndexHelper.TABLE, 0) > 0;
+        }
+        return mIsReady;
+    }
+
+    @Nullable
+    private SQLiteDatabase getDatabase() {
+        if (mHelper == null) {
+            synchronized (this) {
+                if (mContext == null) {
+                    return null;
+                }
+                if (mHelper == null) {
+                    String dir = BoxingFileHelper.getCacheDir(mContext);
+                    if (TextUtils.isEmpty(dir)) {
+                        return null;
+                    }
+                    mHelper = new MediaIndexHelper(mContext, dir + File.separator + DB_NAME);
+                }
+            }
+        }
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && !db.isWriteAheadLoggingEnabled()) {
+                // let the pages be read while reconciling.
+                db.enableWriteAheadLogging();
+            }
+            return db;
+        } catch (SQLException e) {
+            BoxingLog.d("fail to open the media index. " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the count of rows newer than the newest one in the index.
+     */
+    private int upsertNewer(ContentResolver cr, SQLiteDatabase db, long newest) {
+        String selection = newest < 0 ? null : Media.DATE_MODIFIED + ">=?";
+        String[] args = newest < 0 ? null : new String[]{String.valueOf(newest)};
+        return upsert(cr, db, selection, args, newest);
+    }
+
+    /**
+     * @return the count of rows written newer than the date.
+     */
+    private int upsert(ContentResolver cr, SQLiteDatabase db, String selection, String[] args, long newest) {
+        Cursor cursor = null;
+        int result = 0;
+        db.beginTransaction();
+        try {
+            cursor = cr.query(Media.EXTERNAL_CONTENT_URI, getStoreColumns(), selection, args, null);
+            if (cursor == null || !cursor.moveToFirst()) {
+                return 0;
+            }
+            int idCol = cursor.getColumnIndex(Media._ID);
+            int dataCol = cursor.getColumnIndex(Media.DATA);
+            int sizeCol = cursor.getColumnIndex(Media.SIZE);
+            int mimeCol = cursor.getColumnIndex(Media.MIME_TYPE);
+            int widthCol = cursor.getColumnIndex(Media.WIDTH);
+            int heightCol = cursor.getColumnIndex(Media.HEIGHT);
+            int bucketIdCol = cursor.getColumnIndex(Media.BUCKET_ID);
+            int bucketNameCol = cursor.getColumnIndex(Media.BUCKET_DISPLAY_NAME);
+            int dateCol = cursor.getColumnIndex(Media.DATE_MODIFIED);
+            SQLiteStatement statement = db.compileStatement(INSERT_SQL);
+            try {
+                do {
+                    long date = cursor.getLong(dateCol);
+                    statement.clearBindings();
+                    statement.bindLong(1, cursor.getLong(idCol));
+                    bindString(statement, 2, cursor.getString(dataCol));
+                    statement.bindLong(3, cursor.getLong(sizeCol));
+                    bindString(statement, 4, cursor.getString(mimeCol));
+                    statement.bindLong(5, widthCol < 0 ? 0 : cursor.getLong(widthCol));
+                    statement.bindLong(6, heightCol < 0 ? 0 : cursor.getLong(heightCol));
+                    bindString(statement, 7, cursor.getString(bucketIdCol));
+                    bindString(statement, 8, cursor.getString(bucketNameCol));
+                    statement.bindLong(9, date);
+                    statement.executeInsert();
+                    if (date > newest) {
+                        result++;
+                    }
+                } while (cursor.moveToNext());
+            } finally {
+                statement.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * diff the index with MediaStore both ways, remove the rows not in MediaStore any more,
+     * and write the rows missing from the index or with another path or date.
+     *
+     * @return the count of rows removed or written.
+     */
+    private int sweep(ContentResolver cr, SQLiteDatabase db) {
+        StoreRows rows = queryStoreRows(cr);
+        if (rows == null) {
+            return 0;
+        }
+        boolean[] isIndexed = new boolean[rows.mIds.length];
+        List<String> deletes = new ArrayList<>();
+        StringBuilder ids = new StringBuilder();
+        int idCount = 0;
+        Cursor cursor = db.query(MediaIndexHelper.TABLE, new String[]{Media._ID, Media.DATA, Media.DATE_MODIFIED},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                int pos = Arrays.binarySearch(rows.mIds, id);
+                if (pos >= 0) {
+                    // a row with another path or date is written again.
+                    isIndexed[pos] = rows.mSignatures[pos] == getSignature(cursor.getString(1), cursor.getLong(2));
+                    continue;
+                }
+                ids.append(idCount == 0 ? "" : ",").append(id);
+                if (++idCount == MAX_IDS_PER_STATEMENT) {
+                    deletes.add(ids.toString());
+                    ids.setLength(0);
+                    idCount = 0;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (idCount > 0) {
+            deletes.add(ids.toString());
+        }
+        int result = 0;
+        db.beginTransaction();
+        try {
+            for (String in : deletes) {
+                result += db.delete(MediaIndexHelper.TABLE, Media._ID + " in (" + in + ")", null);
+            }
+            ids.setLength(0);
+            idCount = 0;
+            for (int i = 0; i < isIndexed.length; i++) {
+                if (isIndexed[i]) {
+                    continue;
+                }
+                ids.append(idCount == 0 ? "" : ",").append(rows.mIds[i]);
+                if (++idCount == MAX_IDS_PER_STATEMENT) {
+                    result += upsert(cr, db, Media._ID + " in (" + ids + ")", null, Long.MIN_VALUE);
+                    ids.setLength(0);
+                    idCount = 0;
+                }
+            }
+            if (idCount > 0) {
+                result += upsert(cr, db, Media._ID + " in (" + ids + ")", null, Long.MIN_VALUE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return result;
+    }
+
+    /**
+     * @return the ids in MediaStore sorted with the signatures of their path and date, or null if fail to query.
+     */
+    @Nullable
+    private StoreRows queryStoreRows(ContentResolver cr) {
+        Cursor cursor = null;
+        try {
+            cursor = cr.query(Media.EXTERNAL_CONTENT_URI, new String[]{Media._ID, Media.DATA, Media.DATE_MODIFIED},
+                    null, null, Media._ID + " asc");
+            if (cursor == null) {
+                return null;
+            }
+            int capacity = cursor.getCount();
+            long[] ids = new long[capacity];
+            long[] signatures = new long[capacity];
+            int count = 0;
+            boolean isSorted = true;
+            while (cursor.moveToNext() && count < capacity) {
+                ids[count] = cursor.getLong(0);
+                signatures[count] = getSignature(cursor.getString(1), cursor.getLong(2));
+                isSorted &= count == 0 || ids[count - 1] < ids[count];
+                count++;
+            }
+            StoreRows rows = new StoreRows(Arrays.copyOf(ids, count), Arrays.copyOf(signatures, count));
+            if (!isSorted) {
+                rows.sort();
+            }
+            return rows;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * @return the count and the sum of the ids in MediaStore, or null if the provider can not sum them.
+     */
+    @Nullable
+    private long[] queryStoreFingerprint(ContentResolver cr) {
+        Cursor cursor = null;
+        try {
+            cursor = cr.query(Media.EXTERNAL_CONTENT_URI, new String[]{"count(*)", "sum(" + Media._ID + ")"},
+                    null, null, null);
+            if (cursor == null || !cursor.moveToFirst() || cursor.getColumnCount() < 2) {
+                return null;
+            }
+            return new long[]{cursor.getLong(0), cursor.isNull(1) ? 0 : cursor.getLong(1)};
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private long[] queryIndexFingerprint(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT count(*), sum(" + Media._ID + ") FROM " + MediaIndexHelper.TABLE, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return new long[]{0, 0};
+            }
+            return new long[]{cursor.getLong(0), cursor.isNull(1) ? 0 : cursor.getLong(1)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long getSignature(String path, long date) {
+        return ((long) (path == null ? 0 : path.hashCode()) << 32) ^ date;
+    }
+
+    private long queryLong(SQLiteDatabase db, String sql, long defaultValue) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : defaultValue;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private String[] getStoreColumns() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return new String[]{Media._ID, Media.DATA, Media.SIZE, Media.MIME_TYPE, Media.WIDTH, Media.HEIGHT,
+                    Media.BUCKET_ID, Media.BUCKET_DISPLAY_NAME, Media.DATE_MODIFIED};
+        }
+        return new String[]{Media._ID, Media.DATA, Media.SIZE, Media.MIME_TYPE,
+                Media.BUCKET_ID, Media.BUCKET_DISPLAY_NAME, Media.DATE_MODIFIED};
+    }
+
+    /**
+     * the ids in MediaStore with the signatures of their path and date at the same position.
+     */
+    private static class StoreRows {
+        long[] mIds;
+        long[] mSignatures;
+
+        StoreRows(long[] ids, long[] signatures) {
+            mIds = ids;
+            mSignatures = signatures;
+        }
+
+        void sort() {
+            Integer[] order = new Integer[mIds.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    long idA = mIds[a];
+                    long idB = mIds[b];
+                    return idA < idB ? -1 : (idA == idB ? 0 : 1);
+                }
+            });
+            long[] ids = new long[mIds.length];
+            long[] signatures = new long[mIds.length];
+            for (int i = 0; i < order.length; i++) {
+                ids[i] = mIds[order[i]];
+                signatures[i] = mSignatures[order[i]];
+            }
+            mIds = ids;
+            mSignatures = signatures;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.MediaStore.Images.Media;
+
+/**
+ * The database of {@link MediaIndex}, the columns are named as the MediaStore does,
+ * so the same selection and order work for both.
+ *
+ * @author ChenSL
+ */
+class MediaIndexHelper extends SQLiteOpenHelper {
+    static final String TABLE = "media";
+
+    private static final int VERSION = 1;
+
+    MediaIndexHelper(Context context, String path) {
+        super(context, path, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + Media._ID + " INTEGER PRIMARY KEY, "
+                + Media.DATA + " TEXT, "
+                + Media.SIZE + " INTEGER, "
+                + Media.MIME_TYPE + " TEXT, "
+                + Media.WIDTH + " INTEGER, "
+                + Media.HEIGHT + " INTEGER, "
+                + Media.BUCKET_ID + " TEXT, "
+                + Media.BUCKET_DISPLAY_NAME + " TEXT, "
+                + Media.DATE_MODIFIED + " INTEGER)");
+        db.execSQL("CREATE INDEX " + TABLE + "_date ON " + TABLE + " (" + Media.DATE_MODIFIED + ", " + Media._ID + ")");
+        db.execSQL("CREATE INDEX " + TABLE + "_bucket ON " + TABLE + " (" + Media.BUCKET_ID + ", " + Media.DATE_MODIFIED + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // only a cache of MediaStore, rebuild it.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bilibili.boxing.model.entity.BaseMedia;
+import com.bilibili.boxing.utils.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The selected medias keyed by the id, checking a media is O(1) without boxing,
+ * and the medias are kept in the order of selecting.
+ * Not thread safe, copy it by {@link #MediaSelection(MediaSelection)} for another thread.
+ *
+ * @author ChenSL
+ */
+public class MediaSelection {
+    private final LongHashSet mKeys;
+    private final ArrayList<BaseMedia> mMedias;
+
+    public MediaSelection() {
+        mKeys = new LongHashSet();
+        mMedias = new ArrayList<>();
+    }
+
+    public MediaSelection(@NonNull MediaSelection selection) {
+        mKeys = new LongHashSet(selection.size());
+        mMedias = new ArrayList<>(selection.size());
+        set(selection.mMedias);
+    }
+
+    public boolean contains(@Nullable BaseMedia media) {
+        return media != null && mKeys.contains(getKey(media));
+    }
+
+    /**
+     * @return false if the media is selected already.
+     */
+    public boolean add(@NonNull BaseMedia media) {
+        if (!mKeys.add(getKey(media))) {
+            return false;
+        }
+        mMedias.add(media);
+        return true;
+    }
+
+    /**
+     * @return false if the media is not selected.
+     */
+    public boolean remove(@NonNull BaseMedia media) {
+        long key = getKey(media);
+        if (!mKeys.remove(key)) {
+            return false;
+        }
+        // the selected medias are a few, and the order is kept.
+        for (int i = mMedias.size() - 1; i >= 0; i--) {
+            if (getKey(mMedias.get(i)) == key) {
+                mMedias.remove(i);
+                break;
+            }
+        }
+        return true;
+    }
+
+    public void set(@Nullable List<BaseMedia> medias) {
+        clear();
+        if (medias == null) {
+            return;
+        }
+        for (BaseMedia media : medias) {
+            if (media != null) {
+                add(media);
+            }
+        }
+    }
+
+    public void clear() {
+        mKeys.clear();
+        mMedias.clear();
+    }
+
+    public int size() {
+        return mMedias.size();
+    }
+
+    public boolean isEmpty() {
+        return mMedias.isEmpty();
+    }
+
+    /**
+     * @return a copy of the selected medias in the order of selecting.
+     */
+    @NonNull
+    public ArrayList<BaseMedia> getMedias() {
+        return new ArrayList<>(mMedias);
+    }
+
+    /**
+     * @return the id in MediaStore, or a negative key from the path for a media not in MediaStore.
+     */
+    static long getKey(@NonNull BaseMedia media) {
+        String id = media.getId();
+        if (id != null) {
+            try {
+                long result = Long.parseLong(id);
+                if (result >= 0) {
+                    return result;
+                }
+            } catch (NumberFormatException ignore) {
+                // not an id of MediaStore.
+            }
+        }
+        String path = media.getPath();
+        return -1 - (path == null ? 0 : path.hashCode() & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.callback;
+
+
+import android.support.annotation.NonNull;
+
+import com.bilibili.boxing.model.entity.BaseMedia;
+
+import java.util.List;
+
+/**
+ * A callback to load the changes of medias since the last time.
+ *
+ * @author ChenSL
+ */
+public interface IMediaChangeCallback<T extends BaseMedia> extends IMediaFilter {
+
+    /**
+     * get the changes of medias in a album
+     *
+     * @param inserted   the medias added after the last id, in the order of a page.
+     * @param removedIds the ids asked for which no longer exist.
+     * @param lastId     the largest id in MediaStore, the last id for the next time.
+     */
+    void postMediaChanges(@NonNull List<T> inserted, @NonNull List<String> removedIds, long lastId);
+}
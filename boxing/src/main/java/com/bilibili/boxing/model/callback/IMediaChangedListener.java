@@ -0,0 +1,36 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.callback;
+
+/**
+ * A listener of MediaStore, see {@link com.bilibili.boxing.model.BoxingManager#addMediaChangedListener}.
+ *
+ * @author ChenSL
+ */
+public interface IMediaChangedListener {
+
+    /**
+     * called in the binder thread when the images or videos change.
+     */
+    void onMediaChanged();
+
+    /**
+     * called in the worker thread when {@link com.bilibili.boxing.model.MediaIndex} finds the rows it served
+     * out of date, the medias older than the last id may be missing from the loaded pages, load them again.
+     */
+    void onMediaIndexChanged();
+}
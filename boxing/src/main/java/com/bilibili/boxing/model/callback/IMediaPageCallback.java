@@ -0,0 +1,47 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.callback;
+
+
+import android.support.annotation.Nullable;
+
+import com.bilibili.boxing.model.entity.BaseMedia;
+import com.bilibili.boxing.model.task.PageKey;
+
+import java.util.List;
+
+/**
+ * A {@link IMediaTaskCallback} paging by {@link PageKey} and caching the count of the album,
+ * the tasks check for it, so a plain {@link IMediaTaskCallback} still works.
+ *
+ * @author ChenSL
+ */
+public interface IMediaPageCallback<T extends BaseMedia> extends IMediaTaskCallback<T> {
+
+    /**
+     * get the key of the last row in the page, called right before {@link #postMedia(List, int)}.
+     *
+     * @param key the key to load the next page, null if there is no more page.
+     */
+    void postNextPageKey(@Nullable PageKey key);
+
+    /**
+     * the total count of the album known by the caller, the task will not count the album again
+     * unless it is {@link com.bilibili.boxing.model.task.IMediaTask#UNKNOWN_COUNT}.
+     */
+    int getCachedCount();
+}
@@ -29,7 +29,7 @@ import java.util.List;
  *
  * @author ChenSL
  */
-public interface IMediaTaskCallback<T extends BaseMedia> {
+public interface IMediaTaskCallback<T extends BaseMedia> extends IMediaFilter {
     /**
      * get a page of medias in a album
      *
@@ -38,11 +38,4 @@ public interface IMediaTaskCallback<T extends BaseMedia> {
      */
     void postMedia(@Nullable List<T> medias, int count);
 
-    /**
-     * judge the path needing filer
-     *
-     * @param path photo path
-     * @return true:be filter
-     */
-    boolean needFilter(String path);
 }
@@ -32,7 +32,7 @@ public abstract class BaseMedia implements Parcelable {
 
     protected String mPath;
     protected String mId;
-    protected String mSize;
+    protected long mSize;
 
     public BaseMedia() {
     }
@@ -49,22 +49,38 @@ public abstract class BaseMedia implements Parcelable {
     }
 
     public long getSize() {
-        try {
-            long result = Long.parseLong(mSize);
-            return result > 0 ? result : 0;
-        }catch (NumberFormatException size) {
-            return 0;
-        }
+        return mSize > 0 ? mSize : 0;
     }
 
     public void setId(String id) {
         mId = id;
     }
 
+    /**
+     * @param size the size in string, 0 if it is not a number.
+     */
     public void setSize(String size) {
+        mSize = parseLong(size);
+    }
+
+    public void setSize(long size) {
         mSize = size;
     }
 
+    /**
+     * @return the long value of a numeric column read as string, 0 if it is not a number.
+     */
+    protected static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public String getPath(){
         return mPath;
     }
@@ -82,13 +98,13 @@ public abstract class BaseMedia implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(this.mPath);
         dest.writeString(this.mId);
-        dest.writeString(this.mSize);
+        dest.writeLong(this.mSize);
     }
 
     protected BaseMedia(Parcel in) {
         this.mPath = in.readString();
         this.mId = in.readString();
-        this.mSize = in.readString();
+        this.mSize = in.readLong();
     }
 
 }
@@ -19,21 +19,21 @@ package com.bilibili.boxing.model.entity.impl;
 
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.provider.MediaStore;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import com.bilibili.boxing.model.entity.BaseMedia;
-import com.bilibili.boxing.utils.BoxingExecutor;
 import com.bilibili.boxing.utils.BoxingExifHelper;
 import com.bilibili.boxing.utils.BoxingFileHelper;
 import com.bilibili.boxing.utils.CompressTask;
 import com.bilibili.boxing.utils.ImageCompressor;
+import com.bilibili.boxing.utils.MediaStoreWriter;
 
 import java.io.File;
+import java.util.Collections;
 
 
 /**
@@ -49,6 +49,7 @@ public class ImageMedia extends BaseMedia implements Parcelable {
     private boolean mIsSelected;
     private String mThumbnailPath;
     private String mCompressPath;
+    private String mCompressMimeType;
     private int mHeight;
     private int mWidth;
     private IMAGE_TYPE mImageType;
@@ -65,10 +66,23 @@ public class ImageMedia extends BaseMedia implements Parcelable {
     public ImageMedia(@NonNull File file) {
         this.mId = String.valueOf(System.currentTimeMillis());
         this.mPath = file.getAbsolutePath();
-        this.mSize = String.valueOf(file.length());
+        this.mSize = file.length();
         this.mIsSelected = true;
     }
 
+    /**
+     * create an image read from a cursor without a {@link Builder}.
+     */
+    public ImageMedia(String id, String imagePath, String thumbnailPath, long size, String mimeType, int width, int height) {
+        super(id, imagePath);
+        this.mThumbnailPath = thumbnailPath;
+        this.mSize = size;
+        this.mMimeType = mimeType;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mImageType = getImageTypeByMime(mimeType);
+    }
+
     public ImageMedia(Builder builder) {
         super(builder.mId, builder.mImagePath);
         this.mThumbnailPath = builder.mThumbnailPath;
@@ -164,35 +178,41 @@ public class ImageMedia extends BaseMedia implements Parcelable {
         return mCompressPath;
     }
 
+    /**
+     * @return the mime type of {@link #getCompressPath()}, such as "image/webp" for {@link ImageCompressor.Format#WEBP}.
+     */
+    public String getCompressMimeType() {
+        return mCompressMimeType;
+    }
+
     public void removeExif() {
         BoxingExifHelper.removeExif(getPath());
     }
 
     /**
-     * save image to MediaStore.
+     * save image to MediaStore, see {@link MediaStoreWriter} to save a batch.
      */
     public void saveMediaStore(final ContentResolver cr) {
-        BoxingExecutor.getInstance().runWorker(new Runnable() {
-            @Override
-            public void run() {
-                if (cr != null && !TextUtils.isEmpty(getId())) {
-                    ContentValues values = new ContentValues();
-                    values.put(MediaStore.Images.Media.TITLE, getId());
-                    values.put(MediaStore.Images.Media.MIME_TYPE, getMimeType());
-                    values.put(MediaStore.Images.Media.DATA, getPath());
-                    cr.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-                }
-            }
-        });
+        saveMediaStore(cr, null);
+    }
 
+    /**
+     * save image to MediaStore with the dimensions, the size and the dates,
+     * the id is the one in MediaStore when the callback is called.
+     */
+    public void saveMediaStore(final ContentResolver cr, @Nullable MediaStoreWriter.Callback callback) {
+        if (cr == null) {
+            return;
+        }
+        MediaStoreWriter.insert(cr, Collections.singletonList(this), callback);
     }
 
     public void setCompressPath(String compressPath) {
         mCompressPath = compressPath;
     }
 
-    public void setSize(String size) {
-        mSize = size;
+    public void setCompressMimeType(String compressMimeType) {
+        mCompressMimeType = compressMimeType;
     }
 
     public void setHeight(int height) {
@@ -208,7 +228,8 @@ public class ImageMedia extends BaseMedia implements Parcelable {
         return "ImageMedia{" +
                 ", mThumbnailPath='" + mThumbnailPath + '\'' +
                 ", mCompressPath='" + mCompressPath + '\'' +
-                ", mSize='" + mSize + '\'' +
+                ", mCompressMimeType='" + mCompressMimeType + '\'' +
+                ", mSize=" + mSize +
                 ", mHeight=" + mHeight +
                 ", mWidth=" + mWidth;
     }
@@ -251,7 +272,7 @@ public class ImageMedia extends BaseMedia implements Parcelable {
         private String mImagePath;
         private boolean mIsSelected;
         private String mThumbnailPath;
-        private String mSize;
+        private long mSize;
         private int mHeight;
         private int mWidth;
         private String mMimeType;
@@ -287,6 +308,11 @@ public class ImageMedia extends BaseMedia implements Parcelable {
         }
 
         public Builder setSize(String size) {
+            this.mSize = parseLong(size);
+            return this;
+        }
+
+        public Builder setSize(long size) {
             this.mSize = size;
             return this;
         }
@@ -311,6 +337,7 @@ public class ImageMedia extends BaseMedia implements Parcelable {
         dest.writeInt(this.mWidth);
         dest.writeInt(this.mImageType == null ? -1 : this.mImageType.ordinal());
         dest.writeString(this.mMimeType);
+        dest.writeString(this.mCompressMimeType);
     }
 
     protected ImageMedia(Parcel in) {
@@ -323,6 +350,7 @@ public class ImageMedia extends BaseMedia implements Parcelable {
         int tmpMImageType = in.readInt();
         this.mImageType = tmpMImageType == -1 ? null : IMAGE_TYPE.values()[tmpMImageType];
         this.mMimeType = in.readString();
+        this.mCompressMimeType = in.readString();
     }
 
     public static final Creator<ImageMedia> CREATOR = new Creator<ImageMedia>() {
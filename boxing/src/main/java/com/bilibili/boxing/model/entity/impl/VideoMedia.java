@@ -32,9 +32,10 @@ import java.util.Locale;
  */
 public class VideoMedia extends BaseMedia {
     private static final long MB = 1024 * 1024;
-    
+    public static final long UNKNOWN_DURATION = -1;
+
     private String mTitle;
-    private String mDuration;
+    private long mDuration;
     private String mDateTaken;
     private String mMimeType;
 
@@ -46,6 +47,18 @@ public class VideoMedia extends BaseMedia {
         return TYPE.VIDEO;
     }
 
+    /**
+     * create a video read from a cursor without a {@link Builder}.
+     */
+    public VideoMedia(String id, String path, String title, long size, long duration, String dateTaken, String mimeType) {
+        super(id, path);
+        this.mTitle = title;
+        this.mSize = size;
+        this.mDuration = duration;
+        this.mDateTaken = dateTaken;
+        this.mMimeType = mimeType;
+    }
+
     public VideoMedia(Builder builder) {
         super(builder.mId, builder.mPath);
         this.mTitle = builder.mTitle;
@@ -56,12 +69,17 @@ public class VideoMedia extends BaseMedia {
     }
 
     public String getDuration() {
-        try {
-            long duration = Long.parseLong(mDuration);
-            return formatTimeWithMin(duration);
-        } catch (NumberFormatException e) {
+        if (mDuration == UNKNOWN_DURATION) {
             return "0:00";
         }
+        return formatTimeWithMin(mDuration);
+    }
+
+    /**
+     * @return the duration in milliseconds.
+     */
+    public long getDurationMs() {
+        return mDuration > 0 ? mDuration : 0;
     }
 
     public String formatTimeWithMin(long duration) {
@@ -87,9 +105,24 @@ public class VideoMedia extends BaseMedia {
     }
 
     public void setDuration(String duration) {
+        mDuration = parseDuration(duration);
+    }
+
+    public void setDuration(long duration) {
         mDuration = duration;
     }
 
+    private static long parseDuration(String duration) {
+        if (duration == null) {
+            return UNKNOWN_DURATION;
+        }
+        try {
+            return Long.parseLong(duration);
+        } catch (NumberFormatException e) {
+            return UNKNOWN_DURATION;
+        }
+    }
+
     public String getTitle() {
         return mTitle;
     }
@@ -119,8 +152,8 @@ public class VideoMedia extends BaseMedia {
         private String mId;
         private String mTitle;
         private String mPath;
-        private String mDuration;
-        private String mSize;
+        private long mDuration = UNKNOWN_DURATION;
+        private long mSize;
         private String mDateTaken;
         private String mMimeType;
 
@@ -135,11 +168,21 @@ public class VideoMedia extends BaseMedia {
         }
 
         public Builder setDuration(String duration) {
+            this.mDuration = parseDuration(duration);
+            return this;
+        }
+
+        public Builder setDuration(long duration) {
             this.mDuration = duration;
             return this;
         }
 
         public Builder setSize(String size) {
+            this.mSize = parseLong(size);
+            return this;
+        }
+
+        public Builder setSize(long size) {
             this.mSize = size;
             return this;
         }
@@ -169,7 +212,7 @@ public class VideoMedia extends BaseMedia {
     public void writeToParcel(Parcel dest, int flags) {
         super.writeToParcel(dest, flags);
         dest.writeString(this.mTitle);
-        dest.writeString(this.mDuration);
+        dest.writeLong(this.mDuration);
         dest.writeString(this.mDateTaken);
         dest.writeString(this.mMimeType);
     }
@@ -177,7 +220,7 @@ public class VideoMedia extends BaseMedia {
     protected VideoMedia(Parcel in) {
         super(in);
         this.mTitle = in.readString();
-        this.mDuration = in.readString();
+        this.mDuration = in.readLong();
         this.mDateTaken = in.readString();
         this.mMimeType = in.readString();
     }
@@ -0,0 +1,61 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.task;
+
+import android.content.ContentResolver;
+import android.support.annotation.Nullable;
+import android.support.v4.os.CancellationSignal;
+
+import com.bilibili.boxing.model.callback.IMediaChangeCallback;
+import com.bilibili.boxing.model.callback.IMediaPageCallback;
+import com.bilibili.boxing.model.callback.IMediaTaskCallback;
+import com.bilibili.boxing.model.entity.BaseMedia;
+
+
+/**
+ * A {@link IMediaTask} able to be cancelled, to page by {@link PageKey} and to load the changes.
+ *
+ * @author ChenSL
+ */
+public interface IMediaPagingTask<T extends BaseMedia> extends IMediaTask<T> {
+
+    /**
+     * @param signal stop loading and drop the result once it is cancelled, see {@link MediaLoadHandle}.
+     */
+    void load(ContentResolver cr, int page, String id, IMediaTaskCallback<T> callback, @Nullable CancellationSignal signal);
+
+    /**
+     * load the page right after the key, the cost is the same for any page and the medias
+     * inserted or deleted before the key do not shift the page.
+     *
+     * @param key    the key posted by {@link IMediaPageCallback#postNextPageKey(PageKey)}, null for the first page.
+     * @param signal stop loading and drop the result once it is cancelled, see {@link MediaLoadHandle}.
+     */
+    void loadAfter(ContentResolver cr, @Nullable PageKey key, String id, IMediaTaskCallback<T> callback,
+                   @Nullable CancellationSignal signal);
+
+    /**
+     * load the medias inserted after the last id and find the deleted ones in the ids,
+     * so the loaded pages can be updated without reloading.
+     *
+     * @param lastId the id posted by {@link IMediaChangeCallback#postMediaChanges} last time,
+     *               less than 0 to get the last id only.
+     * @param ids    the ids of the loaded medias, only queried when the rows before the last id are fewer than last time.
+     */
+    void loadChanges(ContentResolver cr, String id, long lastId, @Nullable String[] ids, IMediaChangeCallback<T> callback);
+
+}
@@ -18,6 +18,7 @@
 package com.bilibili.boxing.model.task;
 
 import android.content.ContentResolver;
+import android.provider.MediaStore;
 
 import com.bilibili.boxing.model.callback.IMediaTaskCallback;
 import com.bilibili.boxing.model.entity.BaseMedia;
@@ -30,6 +31,18 @@ import com.bilibili.boxing.model.entity.BaseMedia;
  */
 public interface IMediaTask<T extends BaseMedia> {
     int PAGE_LIMIT = 1000;
+    int UNKNOWN_COUNT = -1;
+
+    /**
+     * the order shared by paging with offset and paging with {@link PageKey}.
+     */
+    String PAGE_ORDER = MediaStore.MediaColumns.DATE_MODIFIED + " desc, " + MediaStore.MediaColumns._ID + " desc";
+
+    /**
+     * the rows after a {@link PageKey} in {@link #PAGE_ORDER}, use {@link PageKey#toSelectionArgs()} as the args.
+     */
+    String KEYSET_SELECTION = "(" + MediaStore.MediaColumns.DATE_MODIFIED + "<? or (" + MediaStore.MediaColumns.DATE_MODIFIED
+            + "=? and " + MediaStore.MediaColumns._ID + "<?))";
 
     void load(ContentResolver cr, int page, String id, IMediaTaskCallback<T> callback);
 
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.task;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.os.CancellationSignal;
+import android.text.TextUtils;
+
+import java.util.concurrent.Future;
+
+/**
+ * A handle of a page being loaded, keyed by (albumId, page, generation).
+ * Cancelling it stops the query and the cursor iteration, and the result arriving late is dropped.
+ *
+ * @author ChenSL
+ */
+public class MediaLoadHandle {
+    private final String mAlbumId;
+    private final int mPage;
+    private final int mGeneration;
+    private final CancellationSignal mSignal;
+    private volatile Future<?> mFuture;
+
+    public MediaLoadHandle(String albumId, int page, int generation) {
+        mAlbumId = albumId;
+        mPage = page;
+        mGeneration = generation;
+        mSignal = new CancellationSignal();
+    }
+
+    public String getAlbumId() {
+        return mAlbumId;
+    }
+
+    public int getPage() {
+        return mPage;
+    }
+
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * the signal for the query and the iteration, checked by the task.
+     */
+    @NonNull
+    public CancellationSignal getSignal() {
+        return mSignal;
+    }
+
+    public void setFuture(@Nullable Future<?> future) {
+        mFuture = future;
+    }
+
+    public boolean matches(String albumId, int page, int generation) {
+        return TextUtils.equals(mAlbumId, albumId) && mPage == page && mGeneration == generation;
+    }
+
+    public boolean isCancelled() {
+        return mSignal.isCanceled();
+    }
+
+    /**
+     * @return true if the task is finished or cancelled.
+     */
+    public boolean isDone() {
+        Future<?> future = mFuture;
+        return isCancelled() || future == null || future.isDone();
+    }
+
+    public void cancel() {
+        mSignal.cancel();
+        Future<?> future = mFuture;
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MediaLoadHandle{" +
+                "mAlbumId='" + mAlbumId + '\'' +
+                ", mPage=" + mPage +
+                ", mGeneration=" + mGeneration +
+                '}';
+    }
+}
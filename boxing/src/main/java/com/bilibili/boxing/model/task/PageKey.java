@@ -0,0 +1,58 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing.model.task;
+
+/**
+ * The (date_modified, _id) of the last row in a page, the next page starts right after it.
+ * Medias are sorted by date_modified desc then _id desc, so the key is stable when new medias arrive.
+ *
+ * @author ChenSL
+ */
+public class PageKey {
+    private final long mDateModified;
+    private final long mId;
+
+    public PageKey(long dateModified, long id) {
+        mDateModified = dateModified;
+        mId = id;
+    }
+
+    public long getDateModified() {
+        return mDateModified;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * the selection args for {@link IMediaTask#KEYSET_SELECTION}.
+     */
+    public String[] toSelectionArgs() {
+        String date = String.valueOf(mDateModified);
+        return new String[]{date, date, String.valueOf(mId)};
+    }
+
+    @Override
+    public String toString() {
+        return "PageKey{" +
+                "mDateModified=" + mDateModified +
+                ", mId=" + mId +
+                '}';
+    }
+}
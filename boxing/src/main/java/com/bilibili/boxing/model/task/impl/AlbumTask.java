@@ -21,10 +21,10 @@ import android.database.Cursor;
 import android.provider.MediaStore.Images.Media;
 import android.support.annotation.NonNull;
 import android.support.annotation.WorkerThread;
-import android.support.v4.util.ArrayMap;
 import android.text.TextUtils;
 
 import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.MediaIndex;
 import com.bilibili.boxing.model.callback.IAlbumTaskCallback;
 import com.bilibili.boxing.model.config.BoxingConfig;
 import com.bilibili.boxing.model.entity.AlbumEntity;
@@ -32,11 +32,14 @@ import com.bilibili.boxing.model.entity.impl.ImageMedia;
 import com.bilibili.boxing.utils.BoxingExecutor;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * A task to load albums.
+ * All the albums, including their count and cover, are built from one cursor sorted by
+ * {@link Media#DATE_MODIFIED}, so the first row seen in a bucket is its cover.
  *
  * @author ChenSL
  */
@@ -45,17 +48,16 @@ public class AlbumTask {
     private static final String UNKNOWN_ALBUM_NAME = "unknow";
     private static final String SELECTION_IMAGE_MIME_TYPE = Media.MIME_TYPE + "=? or " + Media.MIME_TYPE + "=? or " + Media.MIME_TYPE + "=? or " + Media.MIME_TYPE + "=?";
     private static final String SELECTION_IMAGE_MIME_TYPE_WITHOUT_GIF = Media.MIME_TYPE + "=? or " + Media.MIME_TYPE + "=? or " + Media.MIME_TYPE + "=?";
-    private static final String SELECTION_ID = Media.BUCKET_ID + "=? and (" + SELECTION_IMAGE_MIME_TYPE + " )";
-    private static final String SELECTION_ID_WITHOUT_GIF = Media.BUCKET_ID + "=? and (" + SELECTION_IMAGE_MIME_TYPE_WITHOUT_GIF + " )";
     private static final String[] SELECTION_ARGS_IMAGE_MIME_TYPE = {"image/jpeg", "image/png", "image/jpg", "image/gif"};
     private static final String[] SELECTION_ARGS_IMAGE_MIME_TYPE_WITHOUT_GIF = {"image/jpeg", "image/png", "image/jpg"};
-    private int mUnknownAlbumNumber = 1;
+    private static final String[] ALBUM_COLUMNS = {Media._ID, Media.DATA, Media.BUCKET_ID, Media.BUCKET_DISPLAY_NAME};
+
     private Map<String, AlbumEntity> mBucketMap;
     private AlbumEntity mDefaultAlbum;
     private BoxingConfig mPickerConfig;
 
     public AlbumTask() {
-        this.mBucketMap = new ArrayMap<>();
+        this.mBucketMap = new LinkedHashMap<>();
         this.mDefaultAlbum = AlbumEntity.createDefaultAlbum();
         this.mPickerConfig = BoxingManager.getInstance().getBoxingConfig();
     }
@@ -66,60 +68,44 @@ public class AlbumTask {
     }
 
     private void buildAlbumInfo(ContentResolver cr) {
-        String[] distinctBucketColumns = new String[]{Media.BUCKET_ID, Media.BUCKET_DISPLAY_NAME};
-        Cursor bucketCursor = null;
+        boolean isNeedGif = mPickerConfig != null && mPickerConfig.isNeedGif();
+        String selection = isNeedGif ? SELECTION_IMAGE_MIME_TYPE : SELECTION_IMAGE_MIME_TYPE_WITHOUT_GIF;
+        String[] args = isNeedGif ? SELECTION_ARGS_IMAGE_MIME_TYPE : SELECTION_ARGS_IMAGE_MIME_TYPE_WITHOUT_GIF;
+        Cursor cursor = null;
         try {
-            bucketCursor = cr.query(Media.EXTERNAL_CONTENT_URI, distinctBucketColumns, "0==0)" + " GROUP BY(" + Media.BUCKET_ID, null,
+            cursor = MediaIndex.getInstance().queryImages(cr, ALBUM_COLUMNS, selection, args,
                     Media.DATE_MODIFIED + " desc");
-            if (bucketCursor != null && bucketCursor.moveToFirst()) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int idCol = cursor.getColumnIndex(Media._ID);
+                int dataCol = cursor.getColumnIndex(Media.DATA);
+                int bucketIdCol = cursor.getColumnIndex(Media.BUCKET_ID);
+                int bucketNameCol = cursor.getColumnIndex(Media.BUCKET_DISPLAY_NAME);
                 do {
-                    String buckId = bucketCursor.getString(bucketCursor.getColumnIndex(Media.BUCKET_ID));
-                    String name = bucketCursor.getString(bucketCursor.getColumnIndex(Media.BUCKET_DISPLAY_NAME));
-                    AlbumEntity album = buildAlbumInfo(name, buckId);
-                    if (!TextUtils.isEmpty(buckId)) {
-                        buildAlbumCover(cr, buckId, album);
+                    String buckId = cursor.getString(bucketIdCol);
+                    if (TextUtils.isEmpty(buckId)) {
+                        continue;
+                    }
+                    AlbumEntity album = mBucketMap.get(buckId);
+                    if (album == null) {
+                        album = buildAlbumInfo(cursor.getString(bucketNameCol), buckId);
+                        buildAlbumCover(album, cursor.getString(idCol), cursor.getString(dataCol));
+                        mBucketMap.put(buckId, album);
                     }
-                } while (bucketCursor.moveToNext());
+                    album.mCount++;
+                } while (cursor.moveToNext());
             }
         } finally {
-            if (bucketCursor != null) {
-                bucketCursor.close();
+            if (cursor != null) {
+                cursor.close();
             }
         }
     }
 
     /**
-     * get the cover and count
-     *
-     * @param buckId album id
+     * the first row of a bucket in the sorted cursor is the newest one, use it as the cover.
      */
-    private void buildAlbumCover(ContentResolver cr, String buckId, AlbumEntity album) {
-        String[] photoColumn = new String[]{Media._ID, Media.DATA};
-        boolean isNeedGif = mPickerConfig != null && mPickerConfig.isNeedGif();
-        String selectionId = isNeedGif ? SELECTION_ID : SELECTION_ID_WITHOUT_GIF;
-        String[] args = isNeedGif ? SELECTION_ARGS_IMAGE_MIME_TYPE : SELECTION_ARGS_IMAGE_MIME_TYPE_WITHOUT_GIF;
-        String[] selectionArgs = new String[args.length + 1];
-        selectionArgs[0] = buckId;
-        for (int i = 1; i < selectionArgs.length; i++) {
-            selectionArgs[i] = args[i-1];
-        }
-        Cursor coverCursor = cr.query(Media.EXTERNAL_CONTENT_URI, photoColumn, selectionId,
-                selectionArgs, Media.DATE_MODIFIED + " desc");
-        try {
-            if (coverCursor != null && coverCursor.moveToFirst()) {
-                String picPath = coverCursor.getString(coverCursor.getColumnIndex(Media.DATA));
-                String id = coverCursor.getString(coverCursor.getColumnIndex(Media._ID));
-                album.mCount = coverCursor.getCount();
-                album.mImageList.add(new ImageMedia(id, picPath));
-                if (album.mImageList.size() > 0) {
-                    mBucketMap.put(buckId, album);
-                }
-            }
-        } finally {
-            if (coverCursor != null) {
-                coverCursor.close();
-            }
-        }
+    private void buildAlbumCover(AlbumEntity album, String id, String picPath) {
+        album.mImageList.add(new ImageMedia(id, picPath));
     }
 
     private void getAlbumList(@NonNull final IAlbumTaskCallback callback) {
@@ -151,28 +137,13 @@ public class AlbumTask {
     }
 
     @NonNull
-    private AlbumEntity buildAlbumInfo(String bucketName, String bucketId) {
-        AlbumEntity album = null;
-        if (!TextUtils.isEmpty(bucketId)) {
-            album = mBucketMap.get(bucketId);
-        }
-        if (album == null) {
-            album = new AlbumEntity();
-            if (!TextUtils.isEmpty(bucketId)) {
-                album.mBucketId = bucketId;
-            } else {
-                album.mBucketId = String.valueOf(mUnknownAlbumNumber);
-                mUnknownAlbumNumber++;
-            }
-            if (!TextUtils.isEmpty(bucketName)) {
-                album.mBucketName = bucketName;
-            } else {
-                album.mBucketName = UNKNOWN_ALBUM_NAME;
-                mUnknownAlbumNumber++;
-            }
-            if (album.mImageList.size() > 0) {
-                mBucketMap.put(bucketId, album);
-            }
+    private AlbumEntity buildAlbumInfo(String bucketName, @NonNull String bucketId) {
+        AlbumEntity album = new AlbumEntity();
+        album.mBucketId = bucketId;
+        if (!TextUtils.isEmpty(bucketName)) {
+            album.mBucketName = bucketName;
+        } else {
+            album.mBucketName = UNKNOWN_ALBUM_NAME;
         }
         return album;
     }
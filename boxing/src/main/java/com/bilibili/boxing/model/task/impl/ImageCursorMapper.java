@@ -0,0 +1,75 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.task.impl;
+
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.MediaStore.Images;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bilibili.boxing.model.entity.impl.ImageMedia;
+
+/**
+ * Map the rows of an image cursor to {@link ImageMedia}, the column indices are looked up
+ * once per cursor and the numeric columns are read as primitives.
+ *
+ * @author ChenSL
+ */
+class ImageCursorMapper {
+    private final int mIdCol;
+    private final int mDataCol;
+    private final int mSizeCol;
+    private final int mMimeTypeCol;
+    private final int mWidthCol;
+    private final int mHeightCol;
+
+    ImageCursorMapper(@NonNull Cursor cursor) {
+        mIdCol = cursor.getColumnIndex(Images.Media._ID);
+        mDataCol = cursor.getColumnIndex(Images.Media.DATA);
+        mSizeCol = cursor.getColumnIndex(Images.Media.SIZE);
+        mMimeTypeCol = cursor.getColumnIndex(Images.Media.MIME_TYPE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mWidthCol = cursor.getColumnIndex(Images.Media.WIDTH);
+            mHeightCol = cursor.getColumnIndex(Images.Media.HEIGHT);
+        } else {
+            mWidthCol = -1;
+            mHeightCol = -1;
+        }
+    }
+
+    long getId(@NonNull Cursor cursor) {
+        return cursor.getLong(mIdCol);
+    }
+
+    String getPath(@NonNull Cursor cursor) {
+        return cursor.getString(mDataCol);
+    }
+
+    /**
+     * @param path the path of the current row, read by {@link #getPath(Cursor)} for filtering.
+     */
+    @NonNull
+    ImageMedia map(@NonNull Cursor cursor, String path, @Nullable String thumbnailPath) {
+        return new ImageMedia(cursor.getString(mIdCol), path, thumbnailPath, cursor.getLong(mSizeCol),
+                cursor.getString(mMimeTypeCol), getInt(cursor, mWidthCol), getInt(cursor, mHeightCol));
+    }
+
+    private static int getInt(Cursor cursor, int col) {
+        return col >= 0 ? cursor.getInt(col) : 0;
+    }
+}
@@ -22,21 +22,31 @@ import android.database.Cursor;
 import android.os.Build;
 import android.provider.MediaStore.Images;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
-import android.support.v4.util.ArrayMap;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.text.TextUtils;
 
 import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.MediaIndex;
+import com.bilibili.boxing.model.callback.IMediaChangeCallback;
+import com.bilibili.boxing.model.callback.IMediaFilter;
+import com.bilibili.boxing.model.callback.IMediaPageCallback;
 import com.bilibili.boxing.model.callback.IMediaTaskCallback;
 import com.bilibili.boxing.model.config.BoxingConfig;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
+import com.bilibili.boxing.model.task.IMediaPagingTask;
 import com.bilibili.boxing.model.task.IMediaTask;
+import com.bilibili.boxing.model.task.PageKey;
 import com.bilibili.boxing.utils.BoxingExecutor;
 import com.bilibili.boxing.utils.BoxingLog;
+import com.bilibili.boxing.utils.LongHashSet;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A Task to load photos.
@@ -44,7 +54,7 @@ import java.util.Map;
  * @author ChenSL
  */
 @WorkerThread
-public class ImageTask implements IMediaTask<ImageMedia> {
+public class ImageTask implements IMediaPagingTask<ImageMedia> {
     private static final String CONJUNCTION_SQL = "=? or";
     private static final String SELECTION_IMAGE_MIME_TYPE = Images.Media.MIME_TYPE + CONJUNCTION_SQL + " " + Images.Media.MIME_TYPE + CONJUNCTION_SQL + " " + Images.Media.MIME_TYPE + CONJUNCTION_SQL + " " + Images.Media.MIME_TYPE + "=?";
     private static final String SELECTION_IMAGE_MIME_TYPE_WITHOUT_GIF = Images.Media.MIME_TYPE + CONJUNCTION_SQL + " " + Images.Media.MIME_TYPE + CONJUNCTION_SQL + " " + Images.Media.MIME_TYPE + "=?";
@@ -58,49 +68,77 @@ public class ImageTask implements IMediaTask<ImageMedia> {
     private static final String[] SELECTION_ARGS_IMAGE_MIME_TYPE = {IMAGE_JPEG, IMAGE_PNG, IMAGE_JPG, IMAGE_GIF};
     private static final String[] SELECTION_ARGS_IMAGE_MIME_TYPE_WITHOUT_GIF = {IMAGE_JPEG, IMAGE_PNG, IMAGE_JPG};
 
-    private static final String DESC = " desc";
+    private static final String[] COUNT_COLUMNS = {"count(*)"};
 
     private BoxingConfig mPickerConfig;
-    private Map<String, String> mThumbnailMap;
 
     public ImageTask() {
-        this.mThumbnailMap = new ArrayMap<>();
         this.mPickerConfig = BoxingManager.getInstance().getBoxingConfig();
     }
 
+    @Override
+    public void load(@NonNull ContentResolver cr, int page, String id, @NonNull IMediaTaskCallback<ImageMedia> callback) {
+        load(cr, page, id, callback, null);
+    }
+
     @Override
     public void load(@NonNull final ContentResolver cr, final int page, final String id,
-                     @NonNull final IMediaTaskCallback<ImageMedia> callback) {
-        buildThumbnail(cr);
-        buildAlbumList(cr, id, page, callback);
+                     @NonNull final IMediaTaskCallback<ImageMedia> callback, @Nullable CancellationSignal signal) {
+        buildAlbumList(cr, id, page, null, callback, signal);
     }
 
-    private void buildThumbnail(ContentResolver cr) {
-        String[] projection = {Images.Thumbnails.IMAGE_ID, Images.Thumbnails.DATA};
-        queryThumbnails(cr, projection);
+    @Override
+    public void loadAfter(@NonNull ContentResolver cr, @Nullable PageKey key, String id,
+                          @NonNull IMediaTaskCallback<ImageMedia> callback, @Nullable CancellationSignal signal) {
+        buildAlbumList(cr, id, 0, key, callback, signal);
     }
 
-    private void queryThumbnails(ContentResolver cr, String[] projection) {
-        Cursor cur = null;
-        try {
-            cur = Images.Thumbnails.queryMiniThumbnails(cr, Images.Thumbnails.EXTERNAL_CONTENT_URI,
-                    Images.Thumbnails.MINI_KIND, projection);
-            if (cur != null && cur.moveToFirst()) {
-                do {
-                    String imageId = cur.getString(cur.getColumnIndex(Images.Thumbnails.IMAGE_ID));
-                    String imagePath = cur.getString(cur.getColumnIndex(Images.Thumbnails.DATA));
-                    mThumbnailMap.put(imageId, imagePath);
-                } while (cur.moveToNext() && !cur.isLast());
-            }
-        } finally {
-            if (cur != null) {
-                cur.close();
+    @Override
+    public void loadChanges(@NonNull ContentResolver cr, String id, long lastId, @Nullable String[] ids,
+                            @NonNull final IMediaChangeCallback<ImageMedia> callback) {
+        final long newLastId = MediaChangeHelper.queryLastId(cr, Images.Media.EXTERNAL_CONTENT_URI);
+        final List<ImageMedia> inserted = new ArrayList<>();
+        final List<String> removedIds;
+        if (lastId < 0) {
+            removedIds = new ArrayList<>();
+            MediaChangeHelper.markCount(cr, Images.Media.EXTERNAL_CONTENT_URI, newLastId);
+        } else {
+            if (newLastId > lastId) {
+                boolean isNeedGif = mPickerConfig != null && mPickerConfig.isNeedGif();
+                Cursor cursor = null;
+                try {
+                    // MediaStore directly, the index may not have the new rows yet.
+                    cursor = query(cr, id, getColumns(), TextUtils.isEmpty(id), MediaChangeHelper.SELECTION_INSERTED,
+                            new String[]{String.valueOf(lastId), String.valueOf(newLastId)},
+                            isNeedGif ? SELECTION_IMAGE_MIME_TYPE : SELECTION_IMAGE_MIME_TYPE_WITHOUT_GIF,
+                            isNeedGif ? SELECTION_ARGS_IMAGE_MIME_TYPE : SELECTION_ARGS_IMAGE_MIME_TYPE_WITHOUT_GIF,
+                            IMediaTask.PAGE_ORDER, isNeedGif ? SELECTION_ID : SELECTION_ID_WITHOUT_GIF, false, null);
+                    if (cursor != null && cursor.moveToFirst()) {
+                        addItems(cr, inserted, cursor, callback, null);
+                    }
+                } finally {
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+                }
             }
+            removedIds = MediaChangeHelper.queryRemovedIds(cr, Images.Media.EXTERNAL_CONTENT_URI, lastId, newLastId, ids);
         }
+        BoxingExecutor.getInstance().runUI(new Runnable() {
+            @Override
+            public void run() {
+                callback.postMediaChanges(inserted, removedIds, newLastId);
+            }
+        });
     }
 
-    private List<ImageMedia> buildAlbumList(ContentResolver cr, String bucketId, int page,
-                                            @NonNull final IMediaTaskCallback<ImageMedia> callback) {
+    /**
+     * @param key    load the page after the key if not null, otherwise load the page by offset.
+     * @param signal stop querying and drop the result once it is cancelled.
+     */
+    private List<ImageMedia> buildAlbumList(ContentResolver cr, String bucketId, int page, @Nullable PageKey key,
+                                            @NonNull final IMediaTaskCallback<ImageMedia> callback,
+                                            @Nullable CancellationSignal signal) {
         List<ImageMedia> result = new ArrayList<>();
         String columns[] = getColumns();
         Cursor cursor = null;
@@ -108,15 +146,29 @@ public class ImageTask implements IMediaTask<ImageMedia> {
             boolean isDefaultAlbum = TextUtils.isEmpty(bucketId);
             boolean isNeedPaging = mPickerConfig == null || mPickerConfig.isNeedPaging();
             boolean isNeedGif = mPickerConfig != null && mPickerConfig.isNeedGif();
-            int totalCount = getTotalCount(cr, bucketId, columns, isDefaultAlbum, isNeedGif);
-
             String imageMimeType = isNeedGif ? SELECTION_IMAGE_MIME_TYPE : SELECTION_IMAGE_MIME_TYPE_WITHOUT_GIF;
             String[] args = isNeedGif ? SELECTION_ARGS_IMAGE_MIME_TYPE : SELECTION_ARGS_IMAGE_MIME_TYPE_WITHOUT_GIF;
-            String order = isNeedPaging ? Images.Media.DATE_MODIFIED + DESC + " LIMIT "
-                    + page * IMediaTask.PAGE_LIMIT + " , " + IMediaTask.PAGE_LIMIT : Images.Media.DATE_MODIFIED + DESC;
             String selectionId = isNeedGif ? SELECTION_ID : SELECTION_ID_WITHOUT_GIF;
-            cursor = query(cr, bucketId, columns, isDefaultAlbum, isNeedGif, imageMimeType, args, order, selectionId);
-            addItem(totalCount, result, cursor, callback);
+            int totalCount = callback instanceof IMediaPageCallback
+                    ? ((IMediaPageCallback) callback).getCachedCount() : IMediaTask.UNKNOWN_COUNT;
+            if (totalCount == IMediaTask.UNKNOWN_COUNT) {
+                totalCount = getTotalCount(cr, bucketId, isDefaultAlbum, imageMimeType, args, selectionId, signal);
+            }
+            String order;
+            if (!isNeedPaging) {
+                order = IMediaTask.PAGE_ORDER;
+            } else if (key != null) {
+                order = IMediaTask.PAGE_ORDER + " LIMIT " + IMediaTask.PAGE_LIMIT;
+            } else {
+                order = IMediaTask.PAGE_ORDER + " LIMIT " + page * IMediaTask.PAGE_LIMIT + " , " + IMediaTask.PAGE_LIMIT;
+            }
+            String keySelection = isNeedPaging && key != null ? IMediaTask.KEYSET_SELECTION : null;
+            String[] keyArgs = isNeedPaging && key != null ? key.toSelectionArgs() : null;
+            cursor = query(cr, bucketId, columns, isDefaultAlbum, keySelection, keyArgs, imageMimeType, args, order,
+                    selectionId, true, signal);
+            addItem(cr, totalCount, result, cursor, isNeedPaging, callback, signal);
+        } catch (OperationCanceledException e) {
+            BoxingLog.d("load album " + bucketId + " page " + page + " is cancelled.");
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -125,93 +177,148 @@ public class ImageTask implements IMediaTask<ImageMedia> {
         return result;
     }
 
-    private void addItem(final int allCount, final List<ImageMedia> result, Cursor cursor, @NonNull final IMediaTaskCallback<ImageMedia> callback) {
+    private void addItem(ContentResolver cr, final int allCount, final List<ImageMedia> result, Cursor cursor, boolean isNeedPaging,
+                         @NonNull final IMediaTaskCallback<ImageMedia> callback, @Nullable CancellationSignal signal) {
         if (cursor != null && cursor.moveToFirst()) {
-            do {
-                String picPath = cursor.getString(cursor.getColumnIndex(Images.Media.DATA));
-                if (callback.needFilter(picPath)) {
-                    BoxingLog.d("path:" + picPath + " has been filter");
-                } else {
-                    String id = cursor.getString(cursor.getColumnIndex(Images.Media._ID));
-                    String size = cursor.getString(cursor.getColumnIndex(Images.Media.SIZE));
-                    String mimeType = cursor.getString(cursor.getColumnIndex(Images.Media.MIME_TYPE));
-                    int width = 0;
-                    int height = 0;
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                        width = cursor.getInt(cursor.getColumnIndex(Images.Media.WIDTH));
-                        height = cursor.getInt(cursor.getColumnIndex(Images.Media.HEIGHT));
-                    }
-                    ImageMedia imageItem = new ImageMedia.Builder(id, picPath).setThumbnailPath(mThumbnailMap.get(id))
-                            .setSize(size).setMimeType(mimeType).setHeight(height).setWidth(width).build();
-                    if (!result.contains(imageItem)) {
-                        result.add(imageItem);
-                    }
-                }
-            } while (!cursor.isLast() && cursor.moveToNext());
-            postMedias(result, allCount, callback);
+            int dateCol = cursor.getColumnIndex(Images.Media.DATE_MODIFIED);
+            int idCol = cursor.getColumnIndex(Images.Media._ID);
+            int rowCount = cursor.getCount();
+            PageKey nextKey = null;
+            if (isNeedPaging && rowCount >= IMediaTask.PAGE_LIMIT && cursor.moveToLast()) {
+                nextKey = new PageKey(cursor.getLong(dateCol), cursor.getLong(idCol));
+            }
+            addItems(cr, result, cursor, callback, signal);
+            postMedias(result, allCount, nextKey, callback, signal);
         } else {
-            postMedias(result, 0, callback);
+            postMedias(result, 0, null, callback, signal);
         }
-        clear();
     }
 
-    private void postMedias(final List<ImageMedia> result, final int count, @NonNull final IMediaTaskCallback<ImageMedia> callback) {
+    /**
+     * read all the rows in the cursor, resolving the thumbnails window by window,
+     * the whole album is in the cursor without paging.
+     */
+    private void addItems(ContentResolver cr, List<ImageMedia> result, Cursor cursor, @NonNull IMediaFilter filter,
+                          @Nullable CancellationSignal signal) {
+        ImageCursorMapper mapper = new ImageCursorMapper(cursor);
+        int rowCount = cursor.getCount();
+        ThumbnailIndex thumbnailIndex = ThumbnailIndex.getInstance();
+        LongHashSet addedIds = new LongHashSet(rowCount);
+        long[] ids = new long[Math.min(rowCount, IMediaTask.PAGE_LIMIT)];
+        for (int start = 0; start < rowCount; start += ids.length) {
+            int end = Math.min(start + ids.length, rowCount);
+            throwIfCanceled(signal);
+            for (int i = start; i < end && cursor.moveToPosition(i); i++) {
+                ids[i - start] = mapper.getId(cursor);
+            }
+            thumbnailIndex.resolve(cr, ids, end - start);
+            for (int i = start; i < end && cursor.moveToPosition(i); i++) {
+                throwIfCanceled(signal);
+                addItem(result, cursor, mapper, thumbnailIndex, addedIds, filter);
+            }
+        }
+    }
+
+    private void addItem(final List<ImageMedia> result, Cursor cursor, ImageCursorMapper mapper,
+                         ThumbnailIndex thumbnailIndex, LongHashSet addedIds, @NonNull IMediaFilter filter) {
+        long id = mapper.getId(cursor);
+        if (!addedIds.add(id)) {
+            return;
+        }
+        String picPath = mapper.getPath(cursor);
+        if (filter.needFilter(picPath)) {
+            BoxingLog.d("path:" + picPath + " has been filter");
+        } else {
+            result.add(mapper.map(cursor, picPath, thumbnailIndex.get(id)));
+        }
+    }
+
+    private void throwIfCanceled(@Nullable CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    private void postMedias(final List<ImageMedia> result, final int count, final PageKey nextKey,
+                            @NonNull final IMediaTaskCallback<ImageMedia> callback, @Nullable final CancellationSignal signal) {
         BoxingExecutor.getInstance().runUI(new Runnable() {
             @Override
             public void run() {
+                if (signal != null && signal.isCanceled()) {
+                    BoxingLog.d("drop the medias of a cancelled load.");
+                    return;
+                }
+                if (callback instanceof IMediaPageCallback) {
+                    ((IMediaPageCallback) callback).postNextPageKey(nextKey);
+                }
                 callback.postMedia(result, count);
             }
         });
     }
 
+    /**
+     * @param extraSelection the selection and'ed with the album one, such as {@link IMediaTask#KEYSET_SELECTION}.
+     * @param isIndexAllowed read from {@link MediaIndex} if it is ready.
+     */
     private Cursor query(ContentResolver cr, String bucketId, String[] columns, boolean isDefaultAlbum,
-                         boolean isNeedGif, String imageMimeType, String[] args, String order, String selectionId) {
-        Cursor resultCursor;
+                         @Nullable String extraSelection, @Nullable String[] extraArgs, String imageMimeType,
+                         String[] args, String order, String selectionId, boolean isIndexAllowed,
+                         @Nullable CancellationSignal signal) {
+        String selection;
+        List<String> selectionArgs = new ArrayList<>(args.length + 4);
         if (isDefaultAlbum) {
-            resultCursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, columns, imageMimeType,
-                    args, order);
+            selection = "(" + imageMimeType + ")";
         } else {
-            if (isNeedGif) {
-                resultCursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, columns, selectionId,
-                        new String[]{bucketId, args[0], args[1], args[2], args[3]}, order);
-            } else {
-                resultCursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, columns, selectionId,
-                        new String[]{bucketId, args[0], args[1], args[2]}, order);
-            }
+            selection = selectionId;
+            selectionArgs.add(bucketId);
         }
-        return resultCursor;
+        Collections.addAll(selectionArgs, args);
+        if (extraSelection != null) {
+            selection = selection + " and " + extraSelection;
+            Collections.addAll(selectionArgs, extraArgs);
+        }
+        String[] allArgs = selectionArgs.toArray(new String[selectionArgs.size()]);
+        if (!isIndexAllowed || !MediaIndex.getInstance().isEnabled()) {
+            return ContentResolverCompat.query(cr, Images.Media.EXTERNAL_CONTENT_URI, columns, selection, allArgs, order, signal);
+        }
+        throwIfCanceled(signal);
+        return MediaIndex.getInstance().queryImages(cr, columns, selection, allArgs, order);
     }
 
     @NonNull
     private String[] getColumns() {
         String[] columns;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            columns = new String[]{Images.Media._ID, Images.Media.DATA, Images.Media.SIZE, Images.Media.MIME_TYPE, Images.Media.WIDTH, Images.Media.HEIGHT};
+            columns = new String[]{Images.Media._ID, Images.Media.DATA, Images.Media.SIZE, Images.Media.MIME_TYPE,
+                    Images.Media.DATE_MODIFIED, Images.Media.WIDTH, Images.Media.HEIGHT};
         } else {
-            columns = new String[]{Images.Media._ID, Images.Media.DATA, Images.Media.SIZE, Images.Media.MIME_TYPE};
+            columns = new String[]{Images.Media._ID, Images.Media.DATA, Images.Media.SIZE, Images.Media.MIME_TYPE,
+                    Images.Media.DATE_MODIFIED};
         }
         return columns;
     }
 
-    private int getTotalCount(ContentResolver cr, String bucketId, String[] columns, boolean isDefaultAlbum, boolean isNeedGif) {
+    /**
+     * count the album with a count projection, no row is sorted or read.
+     */
+    private int getTotalCount(ContentResolver cr, String bucketId, boolean isDefaultAlbum, String imageMimeType,
+                              String[] args, String selectionId, @Nullable CancellationSignal signal) {
         Cursor allCursor = null;
         int result = 0;
         try {
-            if (isDefaultAlbum) {
-                allCursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, columns,
-                        SELECTION_IMAGE_MIME_TYPE, SELECTION_ARGS_IMAGE_MIME_TYPE,
-                        Images.Media.DATE_MODIFIED + DESC);
-            } else {
-                if (isNeedGif) {
-                    allCursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, columns, SELECTION_ID,
-                            new String[]{bucketId, IMAGE_JPEG, IMAGE_PNG, IMAGE_JPG, IMAGE_GIF}, Images.Media.DATE_MODIFIED + DESC);
-                } else {
-                    allCursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, columns, SELECTION_ID_WITHOUT_GIF,
-                            new String[]{bucketId, IMAGE_JPEG, IMAGE_PNG, IMAGE_JPG}, Images.Media.DATE_MODIFIED + DESC);
+            try {
+                allCursor = query(cr, bucketId, COUNT_COLUMNS, isDefaultAlbum, null, null, imageMimeType, args, null,
+                        selectionId, true, signal);
+                if (allCursor != null && allCursor.moveToFirst()) {
+                    result = allCursor.getInt(0);
+                }
+            } catch (IllegalArgumentException e) {
+                BoxingLog.d("count projection is not supported, count by rows.");
+                allCursor = query(cr, bucketId, new String[]{Images.Media._ID}, isDefaultAlbum, null, null, imageMimeType, args,
+                        null, selectionId, true, signal);
+                if (allCursor != null) {
+                    result = allCursor.getCount();
                 }
-            }
-            if (allCursor != null) {
-                result = allCursor.getCount();
             }
         } finally {
             if (allCursor != null) {
@@ -221,10 +328,4 @@ public class ImageTask implements IMediaTask<ImageMedia> {
         return result;
     }
 
-    private void clear() {
-        if (mThumbnailMap != null) {
-            mThumbnailMap.clear();
-        }
-    }
-
 }
@@ -0,0 +1,169 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.task.impl;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The queries shared by the tasks to find the changes of MediaStore.
+ *
+ * @author ChenSL
+ */
+@WorkerThread
+class MediaChangeHelper {
+    private static final int MAX_IDS_PER_QUERY = 500;
+    private static final String[] ID_COLUMNS = {MediaStore.MediaColumns._ID};
+    private static final String[] COUNT_COLUMNS = {"count(*)"};
+    private static final String SELECTION_NOT_AFTER = MediaStore.MediaColumns._ID + "<=?";
+
+    /**
+     * {lastId, count} of the rows not after the last id for each uri, the ids grow with inserting,
+     * so the count only drops when some of the rows are removed.
+     */
+    private static final Map<Uri, long[]> COUNTS = new HashMap<>();
+
+    /**
+     * the rows inserted in (lastId, newLastId], the ids grow with inserting.
+     */
+    static final String SELECTION_INSERTED = MediaStore.MediaColumns._ID + ">? and " + MediaStore.MediaColumns._ID + "<=?";
+
+    private MediaChangeHelper() {
+    }
+
+    /**
+     * @return the largest id in the uri, or 0 if it is empty, the ids in MediaStore start from 1.
+     */
+    static long queryLastId(@NonNull ContentResolver cr, @NonNull Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = cr.query(uri, ID_COLUMNS, null, null, MediaStore.MediaColumns._ID + " desc LIMIT 1");
+            return cursor != null && cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * remember the count of the rows not after the last id, the next {@link #queryRemovedIds} compares with it.
+     */
+    static void markCount(@NonNull ContentResolver cr, @NonNull Uri uri, long lastId) {
+        saveCount(uri, lastId, queryCount(cr, uri, lastId));
+    }
+
+    /**
+     * check the count of the rows not after the last id first, the ids are only queried when it drops.
+     *
+     * @param lastId    the last id when the ids are loaded.
+     * @param newLastId the last id now, see {@link #queryLastId}.
+     * @return the ids not in the uri any more.
+     */
+    @NonNull
+    static List<String> queryRemovedIds(@NonNull ContentResolver cr, @NonNull Uri uri, long lastId, long newLastId,
+                                        @Nullable String[] ids) {
+        List<String> result = new ArrayList<>();
+        // count the new last id first, a row removed in between is found by the next time.
+        long newCount = queryCount(cr, uri, newLastId);
+        long count = newLastId == lastId ? newCount : queryCount(cr, uri, lastId);
+        boolean isRemoved = !isCountSaved(uri, lastId, count);
+        saveCount(uri, newLastId, newCount);
+        if (ids == null || ids.length == 0 || !isRemoved) {
+            return result;
+        }
+        Set<String> exists = new HashSet<>(ids.length);
+        for (int start = 0; start < ids.length; start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(start + MAX_IDS_PER_QUERY, ids.length);
+            StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" in (");
+            for (int i = start; i < end; i++) {
+                selection.append(i > start ? "," : "").append(parseId(ids[i]));
+            }
+            selection.append(')');
+            Cursor cursor = null;
+            try {
+                cursor = cr.query(uri, ID_COLUMNS, selection.toString(), null, null);
+                while (cursor != null && cursor.moveToNext()) {
+                    exists.add(cursor.getString(0));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        for (String id : ids) {
+            if (!exists.contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the count of the rows not after the last id, or -1 if fail to query.
+     */
+    private static long queryCount(@NonNull ContentResolver cr, @NonNull Uri uri, long lastId) {
+        Cursor cursor = null;
+        try {
+            cursor = cr.query(uri, COUNT_COLUMNS, SELECTION_NOT_AFTER, new String[]{String.valueOf(lastId)}, null);
+            return cursor != null && cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static boolean isCountSaved(@NonNull Uri uri, long lastId, long count) {
+        synchronized (COUNTS) {
+            long[] saved = COUNTS.get(uri);
+            return count >= 0 && saved != null && saved[0] == lastId && saved[1] == count;
+        }
+    }
+
+    private static void saveCount(@NonNull Uri uri, long lastId, long count) {
+        synchronized (COUNTS) {
+            if (count < 0) {
+                COUNTS.remove(uri);
+            } else {
+                COUNTS.put(uri, new long[]{lastId, count});
+            }
+        }
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
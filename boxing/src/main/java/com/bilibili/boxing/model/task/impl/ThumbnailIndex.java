@@ -0,0 +1,122 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing.model.task.impl;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.MediaStore.Images;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LongSparseArray;
+
+import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.task.IMediaTask;
+
+/**
+ * A process-wide index from image id to the path of its mini thumbnail.
+ * Only the ids of a page are queried, and the index is cleared when it grows over
+ * {@link #MAX_SIZE} or the MediaStore changes, so the cost follows the page rather than the library.
+ *
+ * @author ChenSL
+ */
+@WorkerThread
+class ThumbnailIndex {
+    private static final ThumbnailIndex INSTANCE = new ThumbnailIndex();
+
+    private static final int MAX_SIZE = IMediaTask.PAGE_LIMIT * 4;
+    private static final int MAX_IDS_PER_QUERY = 500;
+    private static final String NO_THUMBNAIL = "";
+    private static final String[] PROJECTION = {Images.Thumbnails.IMAGE_ID, Images.Thumbnails.DATA};
+
+    private final LongSparseArray<String> mPaths;
+    private int mGeneration;
+
+    private ThumbnailIndex() {
+        mPaths = new LongSparseArray<>();
+    }
+
+    static ThumbnailIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * make sure the thumbnails of the ids are in the index, query the missing ones only.
+     *
+     * @param ids   the image ids of a page.
+     * @param count the valid count in ids.
+     */
+    synchronized void resolve(@NonNull ContentResolver cr, @NonNull long[] ids, int count) {
+        int generation = BoxingManager.getInstance().getMediaGeneration(cr);
+        if (generation != mGeneration || mPaths.size() + count > MAX_SIZE) {
+            mPaths.clear();
+            mGeneration = generation;
+        }
+        long[] missing = new long[Math.min(count, MAX_IDS_PER_QUERY)];
+        int missingCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (mPaths.get(ids[i]) != null) {
+                continue;
+            }
+            missing[missingCount++] = ids[i];
+            if (missingCount == missing.length) {
+                query(cr, missing, missingCount);
+                missingCount = 0;
+            }
+        }
+        if (missingCount > 0) {
+            query(cr, missing, missingCount);
+        }
+    }
+
+    @Nullable
+    synchronized String get(long id) {
+        String path = mPaths.get(id);
+        return NO_THUMBNAIL.equals(path) ? null : path;
+    }
+
+    private void query(ContentResolver cr, long[] ids, int count) {
+        StringBuilder selection = new StringBuilder(Images.Thumbnails.KIND).append('=').append(Images.Thumbnails.MINI_KIND)
+                .append(" and ").append(Images.Thumbnails.IMAGE_ID).append(" in (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append(ids[i]);
+            mPaths.put(ids[i], NO_THUMBNAIL);
+        }
+        selection.append(')');
+        Cursor cur = null;
+        try {
+            cur = cr.query(Images.Thumbnails.EXTERNAL_CONTENT_URI, PROJECTION, selection.toString(), null, null);
+            if (cur != null && cur.moveToFirst()) {
+                int idCol = cur.getColumnIndex(Images.Thumbnails.IMAGE_ID);
+                int dataCol = cur.getColumnIndex(Images.Thumbnails.DATA);
+                do {
+                    String path = cur.getString(dataCol);
+                    mPaths.put(cur.getLong(idCol), path == null ? NO_THUMBNAIL : path);
+                } while (cur.moveToNext());
+            }
+        } finally {
+            if (cur != null) {
+                cur.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.task.impl;
+
+import android.database.Cursor;
+import android.provider.MediaStore.Video;
+import android.support.annotation.NonNull;
+
+import com.bilibili.boxing.model.entity.impl.VideoMedia;
+
+/**
+ * Map the rows of a video cursor to {@link VideoMedia}, the column indices are looked up
+ * once per cursor and the numeric columns are read as primitives.
+ *
+ * @author ChenSL
+ */
+class VideoCursorMapper {
+    private final int mIdCol;
+    private final int mDataCol;
+    private final int mTitleCol;
+    private final int mMimeTypeCol;
+    private final int mSizeCol;
+    private final int mDateTakenCol;
+    private final int mDurationCol;
+
+    VideoCursorMapper(@NonNull Cursor cursor) {
+        mIdCol = cursor.getColumnIndex(Video.Media._ID);
+        mDataCol = cursor.getColumnIndex(Video.Media.DATA);
+        mTitleCol = cursor.getColumnIndex(Video.Media.TITLE);
+        mMimeTypeCol = cursor.getColumnIndex(Video.Media.MIME_TYPE);
+        mSizeCol = cursor.getColumnIndex(Video.Media.SIZE);
+        mDateTakenCol = cursor.getColumnIndex(Video.Media.DATE_TAKEN);
+        mDurationCol = cursor.getColumnIndex(Video.Media.DURATION);
+    }
+
+    @NonNull
+    VideoMedia map(@NonNull Cursor cursor) {
+        long duration = cursor.isNull(mDurationCol) ? VideoMedia.UNKNOWN_DURATION : cursor.getLong(mDurationCol);
+        return new VideoMedia(cursor.getString(mIdCol), cursor.getString(mDataCol), cursor.getString(mTitleCol),
+                cursor.getLong(mSizeCol), duration, cursor.getString(mDateTakenCol), cursor.getString(mMimeTypeCol));
+    }
+}
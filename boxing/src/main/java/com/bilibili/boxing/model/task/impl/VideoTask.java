@@ -21,12 +21,21 @@ import android.content.ContentResolver;
 import android.database.Cursor;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 
+import com.bilibili.boxing.model.callback.IMediaChangeCallback;
+import com.bilibili.boxing.model.callback.IMediaPageCallback;
 import com.bilibili.boxing.model.callback.IMediaTaskCallback;
 import com.bilibili.boxing.model.entity.impl.VideoMedia;
+import com.bilibili.boxing.model.task.IMediaPagingTask;
 import com.bilibili.boxing.model.task.IMediaTask;
+import com.bilibili.boxing.model.task.PageKey;
 import com.bilibili.boxing.utils.BoxingExecutor;
+import com.bilibili.boxing.utils.BoxingLog;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,7 +46,7 @@ import java.util.List;
  * @author ChenSL
  */
 @WorkerThread
-public class VideoTask implements IMediaTask<VideoMedia> {
+public class VideoTask implements IMediaPagingTask<VideoMedia> {
 
     private final static String[] MEDIA_COL = new String[]{
             MediaStore.Video.Media.DATA,
@@ -46,40 +55,90 @@ public class VideoTask implements IMediaTask<VideoMedia> {
             MediaStore.Video.Media.MIME_TYPE,
             MediaStore.Video.Media.SIZE,
             MediaStore.Video.Media.DATE_TAKEN,
-            MediaStore.Video.Media.DURATION
+            MediaStore.Video.Media.DURATION,
+            MediaStore.Video.Media.DATE_MODIFIED
     };
 
 
     @Override
-    public void load(final ContentResolver cr, final int page, String id, final IMediaTaskCallback<VideoMedia> callback) {
-        loadVideos(cr, page, callback);
+    public void load(ContentResolver cr, int page, String id, IMediaTaskCallback<VideoMedia> callback) {
+        load(cr, page, id, callback, null);
     }
 
-    private void loadVideos(ContentResolver cr, int page, @NonNull final IMediaTaskCallback<VideoMedia> callback) {
+    @Override
+    public void load(final ContentResolver cr, final int page, String id, final IMediaTaskCallback<VideoMedia> callback,
+                     @Nullable CancellationSignal signal) {
+        loadVideos(cr, null, null, IMediaTask.PAGE_ORDER + " LIMIT " + page * IMediaTask.PAGE_LIMIT + " , " + IMediaTask.PAGE_LIMIT,
+                callback, signal);
+    }
+
+    @Override
+    public void loadAfter(ContentResolver cr, @Nullable PageKey key, String id, IMediaTaskCallback<VideoMedia> callback,
+                          @Nullable CancellationSignal signal) {
+        String order = IMediaTask.PAGE_ORDER + " LIMIT " + IMediaTask.PAGE_LIMIT;
+        if (key == null) {
+            loadVideos(cr, null, null, order, callback, signal);
+        } else {
+            loadVideos(cr, IMediaTask.KEYSET_SELECTION, key.toSelectionArgs(), order, callback, signal);
+        }
+    }
+
+    @Override
+    public void loadChanges(ContentResolver cr, String id, long lastId, @Nullable String[] ids,
+                            final IMediaChangeCallback<VideoMedia> callback) {
+        final long newLastId = MediaChangeHelper.queryLastId(cr, MediaStore.Video.Media.EXTERNAL_CONTENT_URI);
+        final List<VideoMedia> inserted = new ArrayList<>();
+        final List<String> removedIds;
+        if (lastId < 0) {
+            removedIds = new ArrayList<>();
+            MediaChangeHelper.markCount(cr, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, newLastId);
+        } else {
+            if (newLastId > lastId) {
+                Cursor cursor = null;
+                try {
+                    cursor = cr.query(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, MEDIA_COL, MediaChangeHelper.SELECTION_INSERTED,
+                            new String[]{String.valueOf(lastId), String.valueOf(newLastId)}, IMediaTask.PAGE_ORDER);
+                    if (cursor != null && cursor.moveToFirst()) {
+                        addItems(inserted, cursor, null);
+                    }
+                } finally {
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+                }
+            }
+            removedIds = MediaChangeHelper.queryRemovedIds(cr, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, lastId, newLastId, ids);
+        }
+        BoxingExecutor.getInstance().runUI(new Runnable() {
+            @Override
+            public void run() {
+                callback.postMediaChanges(inserted, removedIds, newLastId);
+            }
+        });
+    }
+
+    private void loadVideos(ContentResolver cr, String selection, String[] selectionArgs, String order,
+                            @NonNull final IMediaTaskCallback<VideoMedia> callback, @Nullable CancellationSignal signal) {
         final List<VideoMedia> videoMedias = new ArrayList<>();
-        final Cursor cursor = cr.query(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, MEDIA_COL, null, null,
-                MediaStore.Images.Media.DATE_MODIFIED + " desc" + " LIMIT " + page * IMediaTask.PAGE_LIMIT + " , " + IMediaTask.PAGE_LIMIT);
+        Cursor cursor = null;
         try {
+            cursor = ContentResolverCompat.query(cr, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, MEDIA_COL, selection,
+                    selectionArgs, order, signal);
             int count = 0;
             if (cursor != null && cursor.moveToFirst()) {
                 count = cursor.getCount();
-                do {
-                    String data = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.DATA));
-                    String id = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media._ID));
-                    String title = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.TITLE));
-                    String type = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.MIME_TYPE));
-                    String size = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.SIZE));
-                    String date = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.DATE_TAKEN));
-                    String duration = cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.DURATION));
-                    VideoMedia video = new VideoMedia.Builder(id, data).setTitle(title).setDuration(duration)
-                            .setSize(size).setDataTaken(date).setMimeType(type).build();
-                    videoMedias.add(video);
-
-                } while (!cursor.isLast() && cursor.moveToNext());
-                postMedias(callback, videoMedias, count);
+                addItems(videoMedias, cursor, signal);
+                PageKey nextKey = null;
+                if (count >= IMediaTask.PAGE_LIMIT) {
+                    nextKey = new PageKey(cursor.getLong(cursor.getColumnIndex(MediaStore.Video.Media.DATE_MODIFIED)),
+                            cursor.getLong(cursor.getColumnIndex(MediaStore.Video.Media._ID)));
+                }
+                postMedias(callback, videoMedias, count, nextKey, signal);
             } else {
-                postMedias(callback, videoMedias, 0);
+                postMedias(callback, videoMedias, 0, null, signal);
             }
+        } catch (OperationCanceledException e) {
+            BoxingLog.d("load videos is cancelled.");
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -88,11 +147,29 @@ public class VideoTask implements IMediaTask<VideoMedia> {
 
     }
 
+    private void addItems(List<VideoMedia> videoMedias, Cursor cursor, @Nullable CancellationSignal signal) {
+        VideoCursorMapper mapper = new VideoCursorMapper(cursor);
+        do {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            videoMedias.add(mapper.map(cursor));
+        } while (!cursor.isLast() && cursor.moveToNext());
+    }
+
     private void postMedias(@NonNull final IMediaTaskCallback<VideoMedia> callback,
-                            final List<VideoMedia> videoMedias, final int count) {
+                            final List<VideoMedia> videoMedias, final int count, final PageKey nextKey,
+                            @Nullable final CancellationSignal signal) {
         BoxingExecutor.getInstance().runUI(new Runnable() {
             @Override
             public void run() {
+                if (signal != null && signal.isCanceled()) {
+                    BoxingLog.d("drop the videos of a cancelled load.");
+                    return;
+                }
+                if (callback instanceof IMediaPageCallback) {
+                    ((IMediaPageCallback) callback).postNextPageKey(nextKey);
+                }
                 callback.postMedia(videoMedias, count);
             }
         });
@@ -48,6 +48,14 @@ public interface PickerContract {
          */
         void showMedia(@Nullable List<BaseMedia> medias, int allCount);
 
+        /**
+         * update the loaded medias when MediaStore changes, instead of clearing and loading again.
+         *
+         * @param inserted   the new medias in front of the loaded ones.
+         * @param removedIds the ids of the loaded medias being deleted.
+         */
+        void updateMedia(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds);
+
         /**
          * show all the {@link AlbumEntity} in the view
          */
@@ -122,7 +130,10 @@ public interface PickerContract {
         void onLoadNextPage();
 
         /**
-         * Determine the selected allMedias according to mSelectedMedias
+         * Determine the selected allMedias according to mSelectedMedias, by the id,
+         * in the time of the size of allMedias, so pass a page instead of all the medias loaded.
+         * Only for the callers reading {@link com.bilibili.boxing.model.entity.impl.ImageMedia#isSelected()},
+         * the built-in pickers check a media by {@link com.bilibili.boxing.model.MediaSelection} instead.
          *
          * @param allMedias      all medias
          * @param selectedMedias the medias to be selected
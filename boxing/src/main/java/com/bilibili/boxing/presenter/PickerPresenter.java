@@ -18,21 +18,29 @@
 package com.bilibili.boxing.presenter;
 
 import android.content.ContentResolver;
+import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
 import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.MediaSelection;
 import com.bilibili.boxing.model.callback.IAlbumTaskCallback;
-import com.bilibili.boxing.model.callback.IMediaTaskCallback;
+import com.bilibili.boxing.model.callback.IMediaChangeCallback;
+import com.bilibili.boxing.model.callback.IMediaChangedListener;
+import com.bilibili.boxing.model.callback.IMediaPageCallback;
 import com.bilibili.boxing.model.entity.AlbumEntity;
 import com.bilibili.boxing.model.entity.BaseMedia;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
 import com.bilibili.boxing.model.task.IMediaTask;
+import com.bilibili.boxing.model.task.MediaLoadHandle;
+import com.bilibili.boxing.model.task.PageKey;
+import com.bilibili.boxing.utils.BoxingExecutor;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -48,25 +56,123 @@ public class PickerPresenter implements PickerContract.Presenter {
     private boolean mIsLoadingNextPage;
 
     private String mCurrentAlbumId;
-    private LoadMediaCallback mLoadMediaCallback;
+    private int mRequestPage;
+    private PageKey mNextPageKey;
+    private int mNextKeyPage;
+    private int mMediaGeneration;
+    private volatile int mCachedCount = IMediaTask.UNKNOWN_COUNT;
+    private MediaLoadHandle mLoadHandle;
     private LoadAlbumCallback mLoadAlbumCallback;
 
+    private final Set<String> mLoadedIds = new HashSet<>();
+    private long mLastMediaId = -1;
+    private int mSnapshotVersion;
+    private boolean mIsLoadingChanges;
+    private boolean mHasPendingChanges;
+    private MediaChangedListener mMediaChangedListener;
+
     public PickerPresenter(PickerContract.View tasksView) {
         this.mTasksView = tasksView;
         this.mTasksView.setPresenter(this);
-        this.mLoadMediaCallback = new LoadMediaCallback(this);
         this.mLoadAlbumCallback = new LoadAlbumCallback(this);
+        this.mMediaChangedListener = new MediaChangedListener(this);
     }
 
     @Override
     public void loadMedias(int page, String albumId) {
+        ContentResolver cr = mTasksView.getAppCr();
+        if (page == 0) {
+            // observe before taking the generation, it increases when the observing starts.
+            BoxingManager.getInstance().addMediaChangedListener(cr, mMediaChangedListener);
+        }
+        int generation = BoxingManager.getInstance().getMediaGeneration(cr);
+        boolean isSameAlbum = TextUtils.equals(albumId, mCurrentAlbumId);
+        if (mLoadHandle != null) {
+            if (!mLoadHandle.isDone() && mLoadHandle.matches(albumId, page, generation)) {
+                return;
+            }
+            if (page == 0 || !isSameAlbum) {
+                // the pages being loaded are not wanted any more, even the one done but not posted yet.
+                mLoadHandle.cancel();
+            }
+        }
+        boolean canLoadAfterKey = mNextPageKey != null && page > 0 && page == mNextKeyPage && isSameAlbum;
         mCurrentAlbumId = albumId;
+        mRequestPage = page;
         if (page == 0) {
             mTasksView.clearMedia();
             mCurrentPage = 0;
+            mNextPageKey = null;
+            mLoadedIds.clear();
+            mLastMediaId = -1;
+            mSnapshotVersion++;
+        }
+        if (!isSameAlbum || generation != mMediaGeneration) {
+            mCachedCount = IMediaTask.UNKNOWN_COUNT;
+            mMediaGeneration = generation;
+        }
+        LoadMediaCallback callback = new LoadMediaCallback(this, albumId, page, generation);
+        if (canLoadAfterKey) {
+            mLoadHandle = BoxingManager.getInstance().loadMediaAfter(cr, page, mNextPageKey, albumId, callback);
+        } else {
+            mLoadHandle = BoxingManager.getInstance().loadMedia(cr, page, albumId, callback);
+        }
+        if (page == 0) {
+            // take the last id as the snapshot, the changes after it are loaded as they come.
+            loadMediaChanges();
         }
-        ContentResolver cr = mTasksView.getAppCr();
-        BoxingManager.getInstance().loadMedia(cr, page, albumId, mLoadMediaCallback);
+    }
+
+    private void onMediaChanged() {
+        if (mTasksView == null) {
+            return;
+        }
+        if (mIsLoadingChanges) {
+            mHasPendingChanges = true;
+            return;
+        }
+        loadMediaChanges();
+    }
+
+    /**
+     * the first page may be served from a stale index, the medias older than the last id are never
+     * found by the changes, so load from the first page again.
+     */
+    private void onMediaIndexChanged() {
+        if (mTasksView == null) {
+            return;
+        }
+        loadMedias(0, mCurrentAlbumId);
+    }
+
+    private void loadMediaChanges() {
+        mIsLoadingChanges = true;
+        mHasPendingChanges = false;
+        String[] ids = mLastMediaId < 0 ? null : mLoadedIds.toArray(new String[mLoadedIds.size()]);
+        BoxingManager.getInstance().loadMediaChanges(mTasksView.getAppCr(), mCurrentAlbumId, mLastMediaId, ids,
+                new LoadChangesCallback(this, mSnapshotVersion));
+    }
+
+    /**
+     * remember the ids of a loaded page and drop the medias shown by the former pages,
+     * the rows may shift between the pages when the MediaStore changes.
+     */
+    private List<BaseMedia> dropLoadedMedias(List<BaseMedia> medias) {
+        if (medias == null) {
+            return null;
+        }
+        List<BaseMedia> result = null;
+        for (int i = 0; i < medias.size(); i++) {
+            BaseMedia media = medias.get(i);
+            if (mLoadedIds.add(media.getId())) {
+                if (result != null) {
+                    result.add(media);
+                }
+            } else if (result == null) {
+                result = new ArrayList<>(medias.subList(0, i));
+            }
+        }
+        return result == null ? medias : result;
     }
 
     @Override
@@ -77,6 +183,11 @@ public class PickerPresenter implements PickerContract.Presenter {
 
     @Override
     public void destroy() {
+        if (mLoadHandle != null) {
+            mLoadHandle.cancel();
+            mLoadHandle = null;
+        }
+        BoxingManager.getInstance().removeMediaChangedListener(mMediaChangedListener);
         mTasksView = null;
     }
 
@@ -102,56 +213,168 @@ public class PickerPresenter implements PickerContract.Presenter {
         if (allMedias == null || allMedias.size() == 0) {
             return;
         }
-        Map<String, ImageMedia> map = new HashMap<>(allMedias.size());
-        for (BaseMedia allMedia : allMedias) {
-            if (!(allMedia instanceof ImageMedia)) {
-                return;
-            }
-            ImageMedia media = (ImageMedia) allMedia;
-            media.setSelected(false);
-            map.put(media.getPath(), media);
-        }
-        if (selectedMedias == null || selectedMedias.size() < 0) {
-            return;
-        }
-        for (BaseMedia media : selectedMedias) {
-            if (map.containsKey(media.getPath())) {
-                map.get(media.getPath()).setSelected(true);
+        MediaSelection selection = new MediaSelection();
+        selection.set(selectedMedias);
+        for (BaseMedia media : allMedias) {
+            if (media instanceof ImageMedia) {
+                ((ImageMedia) media).setSelected(selection.contains(media));
             }
         }
     }
 
-    private static class LoadMediaCallback implements IMediaTaskCallback<BaseMedia> {
+    /**
+     * the callback of a request, the result is dropped once another album, page or generation is requested.
+     */
+    private static class LoadMediaCallback implements IMediaPageCallback<BaseMedia> {
         private WeakReference<PickerPresenter> mWr;
+        private final String mAlbumId;
+        private final int mPage;
+        private final int mGeneration;
 
-        LoadMediaCallback(PickerPresenter presenter) {
+        LoadMediaCallback(PickerPresenter presenter, String albumId, int page, int generation) {
             mWr = new WeakReference<>(presenter);
+            mAlbumId = albumId;
+            mPage = page;
+            mGeneration = generation;
         }
 
         private PickerPresenter getPresenter() {
             return mWr.get();
         }
 
+        /**
+         * @return the presenter if the request is still the current one, null otherwise.
+         */
+        private PickerPresenter getCurrentPresenter() {
+            PickerPresenter presenter = getPresenter();
+            if (presenter == null || !TextUtils.equals(mAlbumId, presenter.mCurrentAlbumId)
+                    || mPage != presenter.mRequestPage || mGeneration != presenter.mMediaGeneration) {
+                return null;
+            }
+            return presenter;
+        }
+
         @Override
         public void postMedia(List<BaseMedia> medias, int count) {
-            PickerPresenter presenter = getPresenter();
+            PickerPresenter presenter = getCurrentPresenter();
             if (presenter == null) {
                 return;
             }
+            medias = presenter.dropLoadedMedias(medias);
             PickerContract.View view = presenter.mTasksView;
             if (view != null) {
                 view.showMedia(medias, count);
             }
             presenter.mTotalPage = count / IMediaTask.PAGE_LIMIT;
+            if (count > 0) {
+                presenter.mCachedCount = count;
+            }
             presenter.mIsLoadingNextPage = false;
         }
 
+        @Override
+        public void postNextPageKey(PageKey key) {
+            PickerPresenter presenter = getCurrentPresenter();
+            if (presenter == null) {
+                return;
+            }
+            presenter.mNextPageKey = key;
+            presenter.mNextKeyPage = presenter.mRequestPage + 1;
+        }
+
+        @Override
+        public int getCachedCount() {
+            PickerPresenter presenter = getPresenter();
+            return presenter == null ? IMediaTask.UNKNOWN_COUNT : presenter.mCachedCount;
+        }
+
         @Override
         public boolean needFilter(String path) {
             return TextUtils.isEmpty(path) || !(new File(path).exists());
         }
     }
 
+    private static class LoadChangesCallback implements IMediaChangeCallback<BaseMedia> {
+        private WeakReference<PickerPresenter> mWr;
+        private int mSnapshotVersion;
+
+        LoadChangesCallback(PickerPresenter presenter, int snapshotVersion) {
+            mWr = new WeakReference<>(presenter);
+            mSnapshotVersion = snapshotVersion;
+        }
+
+        @Override
+        public void postMediaChanges(@NonNull List<BaseMedia> inserted, @NonNull List<String> removedIds, long lastId) {
+            PickerPresenter presenter = mWr.get();
+            if (presenter == null || presenter.mSnapshotVersion != mSnapshotVersion) {
+                return;
+            }
+            List<BaseMedia> newMedias = new ArrayList<>(inserted.size());
+            for (BaseMedia media : inserted) {
+                if (presenter.mLoadedIds.add(media.getId())) {
+                    newMedias.add(media);
+                }
+            }
+            List<String> deletedIds = new ArrayList<>(removedIds.size());
+            for (String id : removedIds) {
+                if (presenter.mLoadedIds.remove(id)) {
+                    deletedIds.add(id);
+                }
+            }
+            presenter.mLastMediaId = Math.max(presenter.mLastMediaId, lastId);
+            presenter.mIsLoadingChanges = false;
+            if (presenter.mCachedCount != IMediaTask.UNKNOWN_COUNT) {
+                presenter.mCachedCount += newMedias.size() - deletedIds.size();
+            }
+            PickerContract.View view = presenter.mTasksView;
+            if (view != null && (newMedias.size() > 0 || deletedIds.size() > 0)) {
+                view.updateMedia(newMedias, deletedIds);
+            }
+            if (presenter.mHasPendingChanges) {
+                presenter.onMediaChanged();
+            }
+        }
+
+        @Override
+        public boolean needFilter(String path) {
+            return TextUtils.isEmpty(path) || !(new File(path).exists());
+        }
+    }
+
+    private static class MediaChangedListener implements IMediaChangedListener {
+        private WeakReference<PickerPresenter> mWr;
+
+        MediaChangedListener(PickerPresenter presenter) {
+            mWr = new WeakReference<>(presenter);
+        }
+
+        @Override
+        public void onMediaChanged() {
+            BoxingExecutor.getInstance().runUI(new Runnable() {
+                @Override
+                public void run() {
+                    PickerPresenter presenter = mWr.get();
+                    if (presenter != null) {
+                        presenter.onMediaChanged();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onMediaIndexChanged() {
+            BoxingExecutor.getInstance().runUI(new Runnable() {
+                @Override
+                public void run() {
+                    PickerPresenter presenter = mWr.get();
+                    if (presenter != null) {
+                        presenter.onMediaIndexChanged();
+                    }
+                }
+            });
+        }
+    }
+
     private static class LoadAlbumCallback implements IAlbumTaskCallback {
         private WeakReference<PickerPresenter> mWr;
 
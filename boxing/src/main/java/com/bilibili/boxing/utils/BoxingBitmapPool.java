@@ -0,0 +1,319 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of bitmaps bucketed by the bytes of their allocation, reused through
+ * {@link BitmapFactory.Options#inBitmap} by the decoding, the rotation and the compression.
+ * The pool holds {@link #setMaxSize(long)} bytes at most, evicting the oldest bitmaps.
+ * Bitmaps are only reused since {@link Build.VERSION_CODES#KITKAT}, when a larger allocation can be
+ * reconfigured, otherwise the pool recycles what it is given.
+ *
+ * @author ChenSL
+ */
+public class BoxingBitmapPool {
+    private static final BoxingBitmapPool INSTANCE = new BoxingBitmapPool();
+
+    /**
+     * a pooled bitmap is not used for a request smaller than 1/MAX_SIZE_MULTIPLE of it.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    private final LinkedList<Bitmap> mOrder = new LinkedList<>();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private long mMaxSize;
+    private long mCurrentSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    private BoxingBitmapPool() {
+        mMaxSize = Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    public static BoxingBitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxSize the bytes the pool holds at most, 0 to disable the pool.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        mMaxSize = Math.max(0, maxSize);
+        trimToSize(mMaxSize);
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized long getCurrentSize() {
+        return mCurrentSize;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * recycle all the bitmaps in the pool, such as when the memory is low.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return a bitmap of the size, reused from the pool if possible, the pixels are cleared.
+     */
+    @NonNull
+    public Bitmap obtain(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap bitmap = take(width * height * getBytesPerPixel(config));
+        if (bitmap != null) {
+            reconfigure(bitmap, width, height, config);
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * give a bitmap back to the pool, it is recycled if the pool can not reuse it.
+     * The bitmap must not be used by the caller any more.
+     */
+    public void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || !bitmap.isMutable()) {
+            bitmap.recycle();
+            return;
+        }
+        int size = getAllocationByteCount(bitmap);
+        synchronized (this) {
+            if (size > mMaxSize) {
+                bitmap.recycle();
+                return;
+            }
+            ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                mBuckets.put(size, bucket);
+            }
+            bucket.addLast(bitmap);
+            mOrder.addLast(bitmap);
+            mCurrentSize += size;
+            trimToSize(mMaxSize);
+        }
+    }
+
+    /**
+     * decode a file into a pooled bitmap if there is one large enough.
+     *
+     * @param options the bounds are decoded into it already, with the inSampleSize to decode,
+     *                and the inDensity and inTargetDensity to scale after sampling if inScaled.
+     */
+    @Nullable
+    public Bitmap decodeFile(@NonNull String path, @NonNull BitmapFactory.Options options) {
+        options.inJustDecodeBounds = false;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT || options.outWidth <= 0 || options.outHeight <= 0) {
+            return BitmapFactory.decodeFile(path, options);
+        }
+        // the decoder may round the sample size down to a power of 2.
+        int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        if (options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0
+                && options.inDensity != options.inTargetDensity) {
+            float scale = options.inTargetDensity / (float) options.inDensity;
+            width = (int) (width * scale + 0.5f);
+            height = (int) (height * scale + 0.5f);
+        }
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = take(width * height * getBytesPerPixel(config));
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            BoxingLog.d("can not decode into the pooled bitmap: " + e.getMessage());
+            put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        } finally {
+            options.inBitmap = null;
+        }
+    }
+
+    /**
+     * decode a region into a pooled bitmap if there is one large enough.
+     * The region decoder keeps the size and the config of the bitmap reused, so it is reconfigured
+     * to the region first, or the stale pixels around are returned with the region.
+     *
+     * @param options with the inSampleSize to decode.
+     */
+    @Nullable
+    public Bitmap decodeRegion(@NonNull BitmapRegionDecoder decoder, @NonNull Rect region,
+                               @NonNull BitmapFactory.Options options) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return decoder.decodeRegion(region, options);
+        }
+        int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+        int width = (region.width() + sampleSize - 1) / sampleSize;
+        int height = (region.height() + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        Bitmap bitmap = take(width * height * getBytesPerPixel(config));
+        if (bitmap != null) {
+            reconfigure(bitmap, width, height, config);
+        }
+        options.inBitmap = bitmap;
+        try {
+            return decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            BoxingLog.d("can not decode the region into the pooled bitmap: " + e.getMessage());
+            put(options.inBitmap);
+            options.inBitmap = null;
+            return decoder.decodeRegion(region, options);
+        } finally {
+            options.inBitmap = null;
+        }
+    }
+
+    /**
+     * @param degree the degree in clockwise, a multiple of 90.
+     * @return the rotated bitmap drawn into a pooled bitmap, or the source if the degree is 0.
+     * The source is not released.
+     */
+    @NonNull
+    public Bitmap rotate(@NonNull Bitmap source, int degree) {
+        if (degree % 360 == 0) {
+            return source;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(degree);
+        RectF bounds = new RectF(0, 0, source.getWidth(), source.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap result = obtain(Math.round(bounds.width()), Math.round(bounds.height()), config);
+        Canvas canvas = new Canvas(result);
+        synchronized (mPaint) {
+            canvas.drawBitmap(source, matrix, mPaint);
+        }
+        canvas.setBitmap(null);
+        return result;
+    }
+
+    /**
+     * @return the smallest pooled bitmap holding the bytes, null if none.
+     */
+    @Nullable
+    private synchronized Bitmap take(int bytes) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return null;
+        }
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(bytes);
+        if (entry == null || entry.getKey() > (long) bytes * MAX_SIZE_MULTIPLE) {
+            mMissCount++;
+            return null;
+        }
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mOrder.remove(bitmap);
+        mCurrentSize -= entry.getKey();
+        mHitCount++;
+        return bitmap;
+    }
+
+    private void trimToSize(long size) {
+        Iterator<Bitmap> iterator = mOrder.iterator();
+        while (mCurrentSize > size && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            int bytes = getAllocationByteCount(bitmap);
+            ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+            if (bucket != null) {
+                bucket.remove(bitmap);
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(bytes);
+                }
+            }
+            mCurrentSize -= bytes;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+
+    private static int getAllocationByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -14,7 +14,6 @@
  * limitations under the License.
  *
  */
-
 package com.bilibili.boxing.utils;
 
 import android.os.Handler;
@@ -22,18 +21,80 @@ import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.Locale;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * The executor of boxing, holding a bounded pool for each {@link Pool}, sized by the count of cores.
+ * The tasks in a pool run by {@link Priority}, then by the order of submitting.
+ *
  * @author ChenSL
  */
 public class BoxingExecutor {
     private static final BoxingExecutor INSTANCE = new BoxingExecutor();
 
-    private ExecutorService mExecutorService;
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor[] mExecutors = new ThreadPoolExecutor[Pool.values().length];
+    private final AtomicLong mSequence = new AtomicLong();
+    private Handler mUiHandler;
+
+    /**
+     * the kinds of work, each kind runs in its own pool, so they do not fight for the same resource.
+     */
+    public enum Pool {
+        /**
+         * querying MediaStore.
+         */
+        QUERY(Math.max(2, Math.min(CPU_COUNT - 1, 3))),
+        /**
+         * decoding and compressing bitmaps, bound to the cpu and the memory.
+         */
+        DECODE(Math.max(2, Math.min(CPU_COUNT - 1, 4))),
+        /**
+         * reading and writing files or databases.
+         */
+        IO(2);
+
+        private final int mSize;
+
+        Pool(int size) {
+            mSize = size;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+    }
+
+    /**
+     * the priority in a pool, the former runs first.
+     */
+    public enum Priority {
+        /**
+         * the work the user is waiting for, such as the visible page.
+         */
+        VISIBLE,
+        NORMAL,
+        /**
+         * the work may be needed soon, such as the next page.
+         */
+        PREFETCH,
+        /**
+         * the work nobody is waiting for, such as reconciling a cache.
+         */
+        BACKGROUND
+    }
 
     private BoxingExecutor() {
     }
@@ -42,27 +103,31 @@ public class BoxingExecutor {
         return INSTANCE;
     }
 
+    /**
+     * run in {@link Pool#QUERY} with {@link Priority#NORMAL}.
+     */
     public void runWorker(@NonNull Runnable runnable) {
-        ensureWorkerHandlerNotNull();
-        try {
-            mExecutorService.execute(runnable);
-        } catch (Exception e) {
-            BoxingLog.d("runnable stop running unexpected. " + e.getMessage());
-        }
+        runWorker(Pool.QUERY, Priority.NORMAL, runnable);
     }
 
+    /**
+     * run in {@link Pool#QUERY} with {@link Priority#NORMAL}.
+     */
     @Nullable
     public FutureTask<Boolean> runWorker(@NonNull Callable<Boolean> callable) {
-        ensureWorkerHandlerNotNull();
-        FutureTask<Boolean> task = null;
-        try {
-            task = new FutureTask<>(callable);
-            mExecutorService.submit(task);
-            return task;
-        } catch (Exception e) {
-            BoxingLog.d("callable stop running unexpected. " + e.getMessage());
-        }
-        return task;
+        return runWorker(Pool.QUERY, Priority.NORMAL, callable);
+    }
+
+    @Nullable
+    public FutureTask<Void> runWorker(@NonNull Pool pool, @NonNull Priority priority, @NonNull Runnable runnable) {
+        PriorityTask<Void> task = new PriorityTask<>(runnable, priority, mSequence.getAndIncrement());
+        return execute(pool, task) ? task : null;
+    }
+
+    @Nullable
+    public FutureTask<Boolean> runWorker(@NonNull Pool pool, @NonNull Priority priority, @NonNull Callable<Boolean> callable) {
+        PriorityTask<Boolean> task = new PriorityTask<>(callable, priority, mSequence.getAndIncrement());
+        return execute(pool, task) ? task : null;
     }
 
     public void runUI(@NonNull Runnable runnable) {
@@ -78,14 +143,105 @@ public class BoxingExecutor {
         }
     }
 
-    private void ensureWorkerHandlerNotNull() {
-        if (mExecutorService == null) {
-            mExecutorService = Executors.newCachedThreadPool();
+    /**
+     * @return the count of tasks waiting in the pool.
+     */
+    public int getQueueSize(@NonNull Pool pool) {
+        return ensureExecutorNotNull(pool).getQueue().size();
+    }
+
+    /**
+     * @return the approximate count of threads running tasks in the pool.
+     */
+    public int getActiveCount(@NonNull Pool pool) {
+        return ensureExecutorNotNull(pool).getActiveCount();
+    }
+
+    /**
+     * @return the approximate count of tasks finished in the pool.
+     */
+    public long getCompletedTaskCount(@NonNull Pool pool) {
+        return ensureExecutorNotNull(pool).getCompletedTaskCount();
+    }
+
+    private boolean execute(Pool pool, PriorityTask<?> task) {
+        try {
+            ensureExecutorNotNull(pool).execute(task);
+            return true;
+        } catch (Exception e) {
+            BoxingLog.d("task stop running unexpected. " + e.getMessage());
+        }
+        return false;
+    }
+
+    private synchronized ThreadPoolExecutor ensureExecutorNotNull(Pool pool) {
+        ThreadPoolExecutor executor = mExecutors[pool.ordinal()];
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(pool.getSize(), pool.getSize(), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new BoxingThreadFactory(pool));
+            executor.allowCoreThreadTimeOut(true);
+            mExecutors[pool.ordinal()] = executor;
+        }
+        return executor;
+    }
+
+    private synchronized Handler ensureUiHandlerNotNull() {
+        if (mUiHandler == null) {
+            mUiHandler = new Handler(Looper.getMainLooper());
+        }
+        return mUiHandler;
+    }
+
+    private static class PriorityTask<V> extends FutureTask<V> implements Comparable<PriorityTask<?>> {
+        private final Priority mPriority;
+        private final long mSequence;
+
+        PriorityTask(Callable<V> callable, Priority priority, long sequence) {
+            super(callable);
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        PriorityTask(Runnable runnable, Priority priority, long sequence) {
+            super(runnable, null);
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NonNull PriorityTask<?> another) {
+            int result = mPriority.compareTo(another.mPriority);
+            if (result != 0) {
+                return result;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        @Override
+        protected void done() {
+            try {
+                get();
+            } catch (ExecutionException e) {
+                BoxingLog.d("task stop running unexpected. " + e.getCause());
+            } catch (CancellationException | InterruptedException ignore) {
+            }
         }
     }
 
-    private Handler ensureUiHandlerNotNull() {
-        return new Handler(Looper.getMainLooper());
+    private static class BoxingThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+        private final String mName;
+
+        BoxingThreadFactory(Pool pool) {
+            mName = "boxing-" + pool.name().toLowerCase(Locale.US) + "-";
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, mName + mCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
     }
 
 }
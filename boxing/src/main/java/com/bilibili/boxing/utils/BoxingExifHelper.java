@@ -60,7 +60,18 @@ public class BoxingExifHelper {
 
     }
 
+    /**
+     * @return the clockwise degree, probed together with the bounds through {@link ImageHeader}.
+     */
     static int getRotateDegree(String path) {
+        try {
+            return ImageHeader.read(path).getDegree();
+        } catch (IOException ignore) {
+            return 0;
+        }
+    }
+
+    static int readRotateDegree(String path) {
         int result = 0;
         try {
             ExifInterface exif = new ExifInterface(path);
@@ -0,0 +1,293 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Read and rewrite the EXIF orientation of a JPEG by streaming the segments before the image data,
+ * the pixels are never decoded, so rotating in this way is lossless and costs no heap.
+ *
+ * @author ChenSL
+ */
+public class BoxingJpegHelper {
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final int IFD_ENTRY_SIZE = 12;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private BoxingJpegHelper() {
+    }
+
+    /**
+     * The orientation entry of IFD0 in the APP1 segment.
+     */
+    public static class Orientation {
+        private final int mValue;
+        private final long mOffset;
+        private final boolean mIsLittleEndian;
+
+        Orientation(int value, long offset, boolean isLittleEndian) {
+            mValue = value;
+            mOffset = offset;
+            mIsLittleEndian = isLittleEndian;
+        }
+
+        /**
+         * @return one of the EXIF orientations, such as {@link #ORIENTATION_ROTATE_90}.
+         */
+        public int getValue() {
+            return mValue;
+        }
+
+        /**
+         * @return the clockwise degree, -1 for the mirrored orientations.
+         */
+        public int getDegree() {
+            return toDegree(mValue);
+        }
+    }
+
+    /**
+     * @return the orientation in the APP1 segment, null if the file is not a JPEG or has none.
+     */
+    @Nullable
+    public static Orientation readOrientation(@NonNull File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return readOrientation(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in read to the APP1 segment at most, not closed.
+     */
+    @Nullable
+    static Orientation readOrientation(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readUnsignedByte() != 0xFF || data.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            long offset = 2;
+            while (true) {
+                int marker = data.readUnsignedByte();
+                offset++;
+                if (marker != 0xFF) {
+                    return null;
+                }
+                // skip the fill bytes.
+                while (marker == 0xFF) {
+                    marker = data.readUnsignedByte();
+                    offset++;
+                }
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return null;
+                }
+                int length = data.readUnsignedShort() - 2;
+                offset += 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == MARKER_APP1 && length > EXIF_HEADER.length) {
+                    byte[] header = new byte[EXIF_HEADER.length];
+                    data.readFully(header);
+                    if (isExifHeader(header)) {
+                        return readTiff(data, offset + EXIF_HEADER.length, length - EXIF_HEADER.length);
+                    }
+                    skipFully(data, length - EXIF_HEADER.length);
+                } else {
+                    skipFully(data, length);
+                }
+                offset += length;
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * rewrite the orientation in place, the size of the file and the pixels never change.
+     *
+     * @return false if the file has no orientation to rewrite.
+     */
+    public static boolean writeOrientation(@NonNull File file, int value) throws IOException {
+        Orientation orientation = readOrientation(file);
+        if (orientation == null) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(orientation.mOffset);
+            if (orientation.mIsLittleEndian) {
+                raf.write(value & 0xFF);
+                raf.write((value >> 8) & 0xFF);
+            } else {
+                raf.write((value >> 8) & 0xFF);
+                raf.write(value & 0xFF);
+            }
+        } finally {
+            raf.close();
+        }
+        return true;
+    }
+
+    /**
+     * rotate a JPEG losslessly by its orientation.
+     *
+     * @param degree the clockwise degree to rotate, a multiple of 90.
+     * @return false if the file has no orientation or a mirrored one.
+     */
+    public static boolean rotate(@NonNull File file, int degree) throws IOException {
+        Orientation orientation = readOrientation(file);
+        if (orientation == null || orientation.getDegree() < 0) {
+            return false;
+        }
+        int target = ((orientation.getDegree() + degree) % 360 + 360) % 360;
+        return writeOrientation(file, toOrientation(target));
+    }
+
+    static int toDegree(int orientation) {
+        switch (orientation) {
+            case ORIENTATION_NORMAL:
+                return 0;
+            case ORIENTATION_ROTATE_90:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return -1;
+        }
+    }
+
+    static int toOrientation(int degree) {
+        switch (degree) {
+            case 90:
+                return ORIENTATION_ROTATE_90;
+            case 180:
+                return ORIENTATION_ROTATE_180;
+            case 270:
+                return ORIENTATION_ROTATE_270;
+            default:
+                return ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * @param tiffOffset the offset of the TIFF header in the file.
+     * @param length     the bytes of the TIFF data in the segment.
+     */
+    @Nullable
+    private static Orientation readTiff(DataInputStream data, long tiffOffset, int length) throws IOException {
+        if (length < 8) {
+            return null;
+        }
+        int byteOrder = data.readUnsignedShort();
+        boolean isLittleEndian;
+        if (byteOrder == 0x4949) {
+            isLittleEndian = true;
+        } else if (byteOrder == 0x4D4D) {
+            isLittleEndian = false;
+        } else {
+            return null;
+        }
+        if (readShort(data, isLittleEndian) != 0x2A) {
+            return null;
+        }
+        long ifdOffset = readInt(data, isLittleEndian);
+        if (ifdOffset < 8 || ifdOffset + 2 > length) {
+            return null;
+        }
+        skipFully(data, ifdOffset - 8);
+        int entryCount = readShort(data, isLittleEndian);
+        if (ifdOffset + 2 + (long) entryCount * IFD_ENTRY_SIZE > length) {
+            return null;
+        }
+        for (int i = 0; i < entryCount; i++) {
+            int tag = readShort(data, isLittleEndian);
+            int type = readShort(data, isLittleEndian);
+            long count = readInt(data, isLittleEndian);
+            if (tag == TAG_ORIENTATION) {
+                if (type != TYPE_SHORT || count != 1) {
+                    return null;
+                }
+                long valueOffset = tiffOffset + ifdOffset + 2 + (long) i * IFD_ENTRY_SIZE + 8;
+                return new Orientation(readShort(data, isLittleEndian), valueOffset, isLittleEndian);
+            }
+            skipFully(data, 4);
+        }
+        return null;
+    }
+
+    private static boolean isExifHeader(byte[] header) {
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (header[i] != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readShort(DataInputStream data, boolean isLittleEndian) throws IOException {
+        int value = data.readUnsignedShort();
+        return isLittleEndian ? ((value & 0xFF) << 8) | (value >> 8) : value;
+    }
+
+    private static long readInt(DataInputStream data, boolean isLittleEndian) throws IOException {
+        long value = data.readInt() & 0xFFFFFFFFL;
+        if (!isLittleEndian) {
+            return value;
+        }
+        return ((value & 0xFF) << 24) | ((value & 0xFF00) << 8) | ((value >> 8) & 0xFF00) | (value >> 24);
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
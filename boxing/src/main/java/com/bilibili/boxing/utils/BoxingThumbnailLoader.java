@@ -0,0 +1,555 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.media.ThumbnailUtils;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.widget.ImageView;
+
+import com.bilibili.boxing.loader.IBoxingCallback;
+import com.bilibili.boxing.loader.IBoxingCancelableLoader;
+import com.bilibili.boxing.loader.IBoxingPrefetchLoader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The built-in {@link IBoxingPrefetchLoader} needing no image library, used by
+ * {@link com.bilibili.boxing.BoxingMediaLoader} when no loader is inited.
+ * The thumbnails are center cropped to the size asked for and cached in two tiers:
+ * the memory, 1/8 of {@link ActivityManager#getMemoryClass()} at most, and the files under
+ * {@link BoxingFileHelper#getCacheDir(Context)}, so a thumbnail is decoded from the source once.
+ * The requests for the same thumbnail share one decoding in {@link BoxingExecutor.Pool#DECODE}.
+ * All the methods are called in the UI thread.
+ *
+ * @author ChenSL
+ */
+public class BoxingThumbnailLoader implements IBoxingPrefetchLoader, IBoxingCancelableLoader {
+    public static final long DEFAULT_DISK_CACHE_SIZE = 30 * 1024 * 1024L;
+
+    private static final String CACHE_DIR = "thumbnail";
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+    private static final int DEFAULT_MEMORY_CLASS = 16;
+    private static final int QUALITY = 85;
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+    /**
+     * the longest side of a raw image displayed with no size, in the max texture size of most devices.
+     */
+    private static final int MAX_RAW_SIZE = 2048;
+    private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final Map<String, Request> mRequests = new HashMap<>();
+    private final Map<String, Request> mPrefetches = new HashMap<>();
+    private final Map<ImageView, Request> mTargets = new WeakHashMap<>();
+    private volatile Bitmap.CompressFormat mFormat = Bitmap.CompressFormat.JPEG;
+    private long mDiskCacheSize = DEFAULT_DISK_CACHE_SIZE;
+    private CompressCache mDiskCache;
+    private boolean mIsDiskCacheOpened;
+
+    public BoxingThumbnailLoader(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        mContext = appContext != null ? appContext : context;
+        ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = am != null && am.getMemoryClass() > 0 ? am.getMemoryClass() : DEFAULT_MEMORY_CLASS;
+        mMemoryCache = new LruCache<String, Bitmap>(memoryClass * 1024 * 1024 / MEMORY_CACHE_DIVISOR) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+        mContext.registerComponentCallbacks(new TrimMemoryCallbacks(mMemoryCache));
+    }
+
+    /**
+     * @param format the format of the thumbnail files, {@link Bitmap.CompressFormat#JPEG} by default.
+     *               The thumbnails of the images may have alpha are kept in PNG if it is JPEG.
+     */
+    public void setCompressFormat(@NonNull Bitmap.CompressFormat format) {
+        mFormat = format;
+    }
+
+    /**
+     * @param maxSize the bytes of the thumbnail files to keep, {@link #DEFAULT_DISK_CACHE_SIZE} by default.
+     */
+    public void setDiskCacheSize(final long maxSize) {
+        final CompressCache diskCache;
+        synchronized (this) {
+            mDiskCacheSize = maxSize;
+            diskCache = mDiskCache;
+        }
+        if (diskCache != null) {
+            // shrinking deletes the files.
+            BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.IO, BoxingExecutor.Priority.BACKGROUND, new Runnable() {
+                @Override
+                public void run() {
+                    diskCache.setMaxSize(maxSize);
+                }
+            });
+        }
+    }
+
+    /**
+     * drop the thumbnails in the memory, the files are kept.
+     */
+    public void clearMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    @Override
+    public void displayThumbnail(@NonNull ImageView img, @NonNull String absPath, int width, int height) {
+        cancel(img);
+        String key = getKey(absPath, width, height);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            img.setImageBitmap(bitmap);
+            return;
+        }
+        Request request = mRequests.get(key);
+        boolean isNew = request == null;
+        if (isNew) {
+            request = new Request(key, absPath, width, height, false, null);
+            mRequests.put(key, request);
+        }
+        mTargets.put(img, request);
+        request.mTargetCount++;
+        if (isNew || request.mPriority != BoxingExecutor.Priority.VISIBLE) {
+            // a prefetching one is queued again ahead, the first to run takes it.
+            submit(request, BoxingExecutor.Priority.VISIBLE);
+        }
+    }
+
+    @Override
+    public void displayRaw(@NonNull ImageView img, @NonNull String absPath, int width, int height, IBoxingCallback callback) {
+        cancel(img);
+        Request request = new Request(getKey(absPath, width, height), absPath, width, height, true, callback);
+        mTargets.put(img, request);
+        request.mTargetCount++;
+        submit(request, BoxingExecutor.Priority.VISIBLE);
+    }
+
+    @Override
+    public void cancel(@NonNull ImageView img) {
+        Request request = mTargets.remove(img);
+        if (request == null) {
+            return;
+        }
+        request.mTargetCount--;
+        if (request.mTargetCount <= 0 && mPrefetches.get(request.mPath) != request) {
+            cancelRequest(request);
+        }
+    }
+
+    @Override
+    public void prefetchThumbnail(@NonNull Context context, @NonNull String absPath, int width, int height) {
+        String key = getKey(absPath, width, height);
+        if (mRequests.containsKey(key) || mMemoryCache.get(key) != null) {
+            return;
+        }
+        Request request = new Request(key, absPath, width, height, false, null);
+        mRequests.put(key, request);
+        mPrefetches.put(absPath, request);
+        submit(request, BoxingExecutor.Priority.PREFETCH);
+    }
+
+    @Override
+    public void cancelPrefetch(@NonNull String absPath) {
+        Request request = mPrefetches.remove(absPath);
+        if (request != null && request.mTargetCount <= 0) {
+            cancelRequest(request);
+        }
+    }
+
+    private void submit(final Request request, BoxingExecutor.Priority priority) {
+        request.mPriority = priority;
+        FutureTask<Void> task = BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.DECODE, priority, new Runnable() {
+            @Override
+            public void run() {
+                if (request.mIsCancelled || !request.mIsTaken.compareAndSet(false, true)) {
+                    return;
+                }
+                final Bitmap bitmap = load(request);
+                BoxingExecutor.getInstance().runUI(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(request, bitmap);
+                    }
+                });
+            }
+        });
+        if (task != null) {
+            request.mTasks.add(task);
+        } else if (request.mTasks.isEmpty()) {
+            deliver(request, null);
+        }
+    }
+
+    private void cancelRequest(Request request) {
+        request.mIsCancelled = true;
+        removeRequest(request);
+        for (FutureTask<Void> task : request.mTasks) {
+            task.cancel(false);
+        }
+    }
+
+    private void removeRequest(Request request) {
+        if (mRequests.get(request.mKey) == request) {
+            mRequests.remove(request.mKey);
+        }
+        if (mPrefetches.get(request.mPath) == request) {
+            mPrefetches.remove(request.mPath);
+        }
+    }
+
+    private void deliver(Request request, @Nullable Bitmap bitmap) {
+        if (request.mIsCancelled) {
+            return;
+        }
+        removeRequest(request);
+        Iterator<Map.Entry<ImageView, Request>> iterator = mTargets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ImageView, Request> entry = iterator.next();
+            if (entry.getValue() != request) {
+                continue;
+            }
+            iterator.remove();
+            if (bitmap != null) {
+                entry.getKey().setImageBitmap(bitmap);
+            }
+        }
+        IBoxingCallback callback = request.mCallback;
+        if (callback != null) {
+            if (bitmap != null) {
+                callback.onSuccess();
+            } else {
+                callback.onFail(request.mError);
+            }
+        }
+    }
+
+    /**
+     * run in the worker thread.
+     */
+    @Nullable
+    private Bitmap load(Request request) {
+        try {
+            boolean isThumbnail = !request.mIsRaw && request.mWidth > 0 && request.mHeight > 0;
+            Bitmap bitmap = isThumbnail ? mMemoryCache.get(request.mKey) : null;
+            if (bitmap == null) {
+                bitmap = decode(request.mPath, request.mWidth, request.mHeight, request.mIsRaw);
+            }
+            if (bitmap != null && isThumbnail) {
+                mMemoryCache.put(request.mKey, bitmap);
+            }
+            return bitmap;
+        } catch (IOException e) {
+            BoxingLog.d("load " + request.mPath + " fail: " + e.getMessage());
+            request.mError = e;
+        } catch (OutOfMemoryError e) {
+            BoxingLog.d("load " + request.mPath + " out of memory.");
+            mMemoryCache.evictAll();
+            request.mError = e;
+        }
+        return null;
+    }
+
+    /**
+     * run in the worker thread, decode the thumbnail from the files or the raw image with no cache in the memory.
+     */
+    @Nullable
+    Bitmap decode(String path, int width, int height, boolean isRaw) throws IOException {
+        if (isRaw || width <= 0 || height <= 0) {
+            return decodeFit(path, width, height);
+        }
+        return loadThumbnail(path, width, height);
+    }
+
+    @Nullable
+    private Bitmap loadThumbnail(String path, int width, int height) throws IOException {
+        ImageHeader header = ImageHeader.read(path);
+        // a video frame has no alpha either.
+        boolean isOpaque = !header.isValid() || MIME_TYPE_JPEG.equals(header.getMimeType());
+        Bitmap.Config config = isOpaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        final Bitmap.CompressFormat format = isOpaque || mFormat != Bitmap.CompressFormat.JPEG
+                ? mFormat : Bitmap.CompressFormat.PNG;
+        final CompressCache diskCache = getDiskCache();
+        final String diskKey = diskCache != null ? getDiskKey(new File(path), width, height, format) : null;
+        if (diskKey != null) {
+            File file = diskCache.get(diskKey);
+            if (file != null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = config;
+                Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+                diskCache.remove(diskKey);
+            }
+        }
+        final Bitmap bitmap = decodeThumbnail(path, header, width, height, config);
+        if (bitmap != null && diskKey != null) {
+            BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.IO, BoxingExecutor.Priority.BACKGROUND, new Runnable() {
+                @Override
+                public void run() {
+                    writeDiskCache(diskCache, diskKey, bitmap, format);
+                }
+            });
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return the image or the frame of the video center cropped to the size, upright.
+     */
+    @Nullable
+    private Bitmap decodeThumbnail(String path, ImageHeader header, int width, int height, Bitmap.Config config) {
+        BoxingBitmapPool pool = BoxingBitmapPool.getInstance();
+        Bitmap source;
+        int degree = 0;
+        if (header.isValid()) {
+            degree = header.getDegree();
+            boolean isSwapped = degree % 180 != 0;
+            int sourceWidth = isSwapped ? header.getHeight() : header.getWidth();
+            int sourceHeight = isSwapped ? header.getWidth() : header.getHeight();
+            int sampleSize = 1;
+            while (sourceWidth / (sampleSize * 2) >= width && sourceHeight / (sampleSize * 2) >= height) {
+                sampleSize *= 2;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.outWidth = header.getWidth();
+            options.outHeight = header.getHeight();
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = config;
+            source = pool.decodeFile(path, options);
+        } else {
+            // not an image, a video gives its frame.
+            source = ThumbnailUtils.createVideoThumbnail(path, MediaStore.Images.Thumbnails.MINI_KIND);
+        }
+        if (source == null) {
+            return null;
+        }
+        try {
+            return cropCenter(source, degree, width, height, config);
+        } finally {
+            pool.put(source);
+        }
+    }
+
+    /**
+     * @return the image sampled into the size, upright.
+     */
+    @Nullable
+    private Bitmap decodeFit(String path, int width, int height) throws IOException {
+        ImageHeader header = ImageHeader.read(path);
+        if (!header.isValid()) {
+            throw new IOException("can not decode " + path);
+        }
+        int degree = header.getDegree();
+        boolean isSwapped = degree % 180 != 0;
+        int sourceWidth = isSwapped ? header.getHeight() : header.getWidth();
+        int sourceHeight = isSwapped ? header.getWidth() : header.getHeight();
+        int maxWidth = width > 0 ? Math.min(width, MAX_RAW_SIZE) : MAX_RAW_SIZE;
+        int maxHeight = height > 0 ? Math.min(height, MAX_RAW_SIZE) : MAX_RAW_SIZE;
+        int sampleSize = 1;
+        while (sourceWidth / sampleSize > maxWidth || sourceHeight / sampleSize > maxHeight) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.outWidth = header.getWidth();
+        options.outHeight = header.getHeight();
+        options.inSampleSize = sampleSize;
+        BoxingBitmapPool pool = BoxingBitmapPool.getInstance();
+        Bitmap source = pool.decodeFile(path, options);
+        if (source == null) {
+            throw new IOException("can not decode " + path);
+        }
+        Bitmap result = pool.rotate(source, degree);
+        if (result != source) {
+            pool.put(source);
+        }
+        return result;
+    }
+
+    private void writeDiskCache(CompressCache diskCache, String diskKey, Bitmap bitmap, Bitmap.CompressFormat format) {
+        File file = diskCache.getFile(diskKey);
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        OutputStream out = null;
+        boolean isWritten = false;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            isWritten = bitmap.compress(format, QUALITY, out);
+            out.close();
+            out = null;
+            isWritten = isWritten && tmp.renameTo(file);
+        } catch (IOException e) {
+            BoxingLog.d("write thumbnail fail: " + e.getMessage());
+            isWritten = false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignore) {
+                }
+            }
+            if (tmp.exists() && !tmp.delete()) {
+                BoxingLog.d("delete " + tmp + " fail.");
+            }
+        }
+        if (isWritten) {
+            diskCache.put(diskKey, file);
+        }
+    }
+
+    @Nullable
+    private synchronized CompressCache getDiskCache() {
+        if (!mIsDiskCacheOpened) {
+            mIsDiskCacheOpened = true;
+            String dir = BoxingFileHelper.getCacheDir(mContext);
+            if (!TextUtils.isEmpty(dir)) {
+                mDiskCache = CompressCache.get(new File(dir, CACHE_DIR));
+                mDiskCache.setMaxSize(mDiskCacheSize);
+            }
+        }
+        return mDiskCache;
+    }
+
+    private static Bitmap cropCenter(Bitmap source, int degree, int width, int height, Bitmap.Config config) {
+        boolean isSwapped = degree % 180 != 0;
+        int sourceWidth = isSwapped ? source.getHeight() : source.getWidth();
+        int sourceHeight = isSwapped ? source.getWidth() : source.getHeight();
+        float scale = Math.max(width / (float) sourceWidth, height / (float) sourceHeight);
+        Matrix matrix = new Matrix();
+        matrix.postTranslate(-source.getWidth() / 2f, -source.getHeight() / 2f);
+        matrix.postRotate(degree);
+        matrix.postScale(scale, scale);
+        matrix.postTranslate(width / 2f, height / 2f);
+        Bitmap result = Bitmap.createBitmap(width, height, config);
+        Canvas canvas = new Canvas(result);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        canvas.setBitmap(null);
+        return result;
+    }
+
+    private static String getKey(String path, int width, int height) {
+        return path + "|" + width + "x" + height;
+    }
+
+    /**
+     * @return the key changing with the content of the source, the size and the format.
+     */
+    @Nullable
+    private static String getDiskKey(File file, int width, int height, Bitmap.CompressFormat format) {
+        String source = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|" + width + "x" + height
+                + "|" + format;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] data = digest.digest(source.getBytes("UTF-8"));
+            char[] str = new char[data.length * 2];
+            int k = 0;
+            for (byte b : data) {
+                str[k++] = HEX_DIGITS[b >>> 4 & 0xf];
+                str[k++] = HEX_DIGITS[b & 0xf];
+            }
+            return new String(str) + (format == Bitmap.CompressFormat.JPEG ? ".jpg" : "." + format.name().toLowerCase(Locale.US));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            BoxingLog.d("have no md5");
+        }
+        return null;
+    }
+
+    private static class Request {
+        final String mKey;
+        final String mPath;
+        final int mWidth;
+        final int mHeight;
+        final boolean mIsRaw;
+        final IBoxingCallback mCallback;
+        final AtomicBoolean mIsTaken = new AtomicBoolean();
+        final List<FutureTask<Void>> mTasks = new ArrayList<>(1);
+        BoxingExecutor.Priority mPriority;
+        int mTargetCount;
+        volatile boolean mIsCancelled;
+        volatile Throwable mError;
+
+        Request(String key, String path, int width, int height, boolean isRaw, IBoxingCallback callback) {
+            mKey = key;
+            mPath = path;
+            mWidth = width;
+            mHeight = height;
+            mIsRaw = isRaw;
+            mCallback = callback;
+        }
+    }
+
+    /**
+     * shrink the memory cache as the system asks.
+     */
+    private static class TrimMemoryCallbacks implements ComponentCallbacks2 {
+        private final LruCache<String, Bitmap> mCache;
+
+        TrimMemoryCallbacks(LruCache<String, Bitmap> cache) {
+            mCache = cache;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_MODERATE) {
+                mCache.evictAll();
+            } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+                mCache.trimToSize(mCache.maxSize() / 2);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            mCache.evictAll();
+        }
+    }
+}
@@ -23,7 +23,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.hardware.Camera;
 import android.net.Uri;
 import android.os.Build;
@@ -41,7 +40,6 @@ import com.bilibili.boxing.AbsBoxingViewFragment;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 
@@ -56,9 +54,31 @@ public class CameraPickerHelper {
     public static final int REQ_CODE_CAMERA = 0x2001;
     private static final String STATE_SAVED_KEY = "com.bilibili.boxing.utils.CameraPickerHelper.saved_state";
 
+    /**
+     * opt-in, keep a JPEG shot as the camera wrote it, the rotation left in its EXIF orientation,
+     * lossless and no decoding. Only for the consumers honoring the EXIF orientation.
+     * The other images are rotated as {@link #ROTATE_MODE_PIXELS}.
+     */
+    public static final int ROTATE_MODE_EXIF = 0;
+    /**
+     * the default, decode the shot, rotate the pixels and encode it again without EXIF,
+     * so the shot is upright for any consumer.
+     */
+    public static final int ROTATE_MODE_PIXELS = 1;
+
+    private static final int CAMERA_UNKNOWN = 0;
+    private static final int CAMERA_AVAILABLE = 1;
+    private static final int CAMERA_UNAVAILABLE = 2;
+
     private String mSourceFilePath;
     private File mOutputFile;
     private Callback mCallback;
+    private int mRotateMode = ROTATE_MODE_PIXELS;
+    /**
+     * checked once in the session of the helper, touched on the UI thread only.
+     */
+    private int mCameraAvailability = CAMERA_UNKNOWN;
+    private boolean mIsCheckingCamera;
 
     public interface Callback {
         void onFinish(@NonNull CameraPickerHelper helper);
@@ -80,6 +100,13 @@ public class CameraPickerHelper {
         this.mCallback = callback;
     }
 
+    /**
+     * @param rotateMode {@link #ROTATE_MODE_PIXELS} by default, or {@link #ROTATE_MODE_EXIF}.
+     */
+    public void setRotateMode(int rotateMode) {
+        mRotateMode = rotateMode;
+    }
+
     public void onSaveInstanceState(Bundle out) {
         SavedState state = new SavedState();
         state.mOutputFile = mOutputFile;
@@ -88,39 +115,74 @@ public class CameraPickerHelper {
     }
 
     /**
-     * start system camera to take a picture
+     * start system camera to take a picture, the availability of the camera is checked in the worker
+     * the first time, and the result is kept for the session of the helper.
      *
      * @param activity      not null if fragment is null.
      * @param fragment      not null if activity is null.
      * @param subFolderPath a folder in external DCIM,must start with "/".
      */
     public void startCamera(final Activity activity, final Fragment fragment, final String subFolderPath) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || !takePhotoSecure(activity, fragment, subFolderPath)) {
-            FutureTask<Boolean> task = BoxingExecutor.getInstance().runWorker(new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws Exception {
-                    try {
-                        // try...try...try
-                        Camera camera = Camera.open();
-                        camera.release();
-                    } catch (Exception e) {
-                        BoxingLog.d("camera is not available.");
-                        return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && takePhotoSecure(activity, fragment, subFolderPath)) {
+            return;
+        }
+        if (mCameraAvailability == CAMERA_AVAILABLE) {
+            startCameraIntent(activity, fragment, subFolderPath, MediaStore.ACTION_IMAGE_CAPTURE, REQ_CODE_CAMERA);
+            return;
+        }
+        if (mCameraAvailability == CAMERA_UNAVAILABLE) {
+            callbackError();
+            return;
+        }
+        if (mIsCheckingCamera) {
+            return;
+        }
+        mIsCheckingCamera = true;
+        FutureTask<Void> task = BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.IO,
+                BoxingExecutor.Priority.VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                final boolean available = isCameraAvailable();
+                BoxingExecutor.getInstance().runUI(new Runnable() {
+                    @Override
+                    public void run() {
+                        mIsCheckingCamera = false;
+                        mCameraAvailability = available ? CAMERA_AVAILABLE : CAMERA_UNAVAILABLE;
+                        if (!available) {
+                            callbackError();
+                        } else if (isHostAlive(activity, fragment)) {
+                            startCameraIntent(activity, fragment, subFolderPath, MediaStore.ACTION_IMAGE_CAPTURE, REQ_CODE_CAMERA);
+                        }
                     }
-                    return true;
-                }
-            });
-            try {
-                if (task != null && task.get()) {
-                    startCameraIntent(activity, fragment, subFolderPath, MediaStore.ACTION_IMAGE_CAPTURE, REQ_CODE_CAMERA);
-                } else {
-                    callbackError();
-                }
-            } catch (InterruptedException | ExecutionException ignore) {
-                callbackError();
+                });
             }
+        });
+        if (task == null) {
+            mIsCheckingCamera = false;
+            callbackError();
+        }
+    }
 
+    private boolean isCameraAvailable() {
+        try {
+            // try...try...try
+            Camera camera = Camera.open();
+            camera.release();
+        } catch (Exception e) {
+            BoxingLog.d("camera is not available.");
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * the host may be gone while the worker is checking.
+     */
+    private boolean isHostAlive(Activity activity, Fragment fragment) {
+        if (fragment != null) {
+            return fragment.isAdded();
+        }
+        return activity != null && !activity.isFinishing();
     }
 
     private boolean takePhotoSecure(Activity activity, Fragment fragment, String subDir) {
@@ -192,7 +254,10 @@ public class CameraPickerHelper {
     }
 
     /**
-     * deal with the system camera's shot.
+     * deal with the system camera's shot, the shot is rotated in the worker,
+     * then {@link Callback} is called on the UI thread.
+     *
+     * @return true if the result is of the camera and being dealt with.
      */
     public boolean onActivityResult(final int requestCode, final int resultCode) {
         if (requestCode != REQ_CODE_CAMERA) {
@@ -202,19 +267,32 @@ public class CameraPickerHelper {
             callbackError();
             return false;
         }
-        FutureTask<Boolean> task = BoxingExecutor.getInstance().runWorker(new Callable<Boolean>() {
+        final File outputFile = mOutputFile;
+        FutureTask<Void> task = BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.DECODE,
+                BoxingExecutor.Priority.VISIBLE, new Runnable() {
             @Override
-            public Boolean call() throws Exception {
-                return rotateImage(resultCode);
+            public void run() {
+                boolean suc;
+                try {
+                    suc = rotateSourceFile(outputFile);
+                } catch (IOException | OutOfMemoryError e) {
+                    BoxingLog.d("rotate the shot fail : " + e.getMessage());
+                    suc = false;
+                }
+                final boolean result = suc;
+                BoxingExecutor.getInstance().runUI(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result) {
+                            callbackFinish();
+                        } else {
+                            callbackError();
+                        }
+                    }
+                });
             }
         });
-        try {
-            if (task != null && task.get()) {
-                callbackFinish();
-            } else {
-                callbackError();
-            }
-        } catch (InterruptedException | ExecutionException ignore) {
+        if (task == null) {
             callbackError();
         }
         return true;
@@ -224,21 +302,39 @@ public class CameraPickerHelper {
         if (file == null || !file.exists()) {
             return false;
         }
+        ImageHeader header = ImageHeader.read(file.getAbsolutePath());
+        int degree = header.getDegree();
+        if (degree == 0) {
+            return true;
+        }
+        // the degree of a JPEG with an orientation comes from it, the others have none to keep.
+        if (mRotateMode == ROTATE_MODE_EXIF && header.getOrientation() != null) {
+            BoxingLog.d("keep the pixels of " + file + ", rotated by the exif orientation.");
+            return true;
+        }
+        return rotatePixels(file, header, degree);
+    }
+
+    /**
+     * the fallback of rotating, decode the whole image and encode it again.
+     *
+     * @param header the bounds probed already, no decoding of the bounds again.
+     */
+    private boolean rotatePixels(File file, ImageHeader header, int degree) throws IOException {
         FileOutputStream outputStream = null;
         Bitmap bitmap = null;
         Bitmap outBitmap = null;
         try {
-            int degree = BoxingExifHelper.getRotateDegree(file.getAbsolutePath());
-            if (degree == 0) {
-                return true;
-            }
             int quality = file.length() >= MAX_CAMER_PHOTO_SIZE ? 90 : 100;
-            Matrix matrix = new Matrix();
-            matrix.postRotate(degree);
+            BoxingBitmapPool pool = BoxingBitmapPool.getInstance();
             BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = false;
-            bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
-            outBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
+            options.outWidth = header.getWidth();
+            options.outHeight = header.getHeight();
+            bitmap = pool.decodeFile(file.getAbsolutePath(), options);
+            if (bitmap == null) {
+                return false;
+            }
+            outBitmap = pool.rotate(bitmap, degree);
             outputStream = new FileOutputStream(file);
             outBitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
             outputStream.flush();
@@ -251,19 +347,11 @@ public class CameraPickerHelper {
                     BoxingLog.d("IOException when output stream closing!");
                 }
             }
-            if (bitmap != null) {
-                bitmap.recycle();
-            }
-            if (outBitmap != null) {
-                outBitmap.recycle();
-            }
+            BoxingBitmapPool.getInstance().put(bitmap);
+            BoxingBitmapPool.getInstance().put(outBitmap);
         }
     }
 
-    private boolean rotateImage(int resultCode) throws IOException {
-        return resultCode == Activity.RESULT_OK && rotateSourceFile(mOutputFile);
-    }
-
     public void release() {
         mOutputFile = null;
     }
@@ -0,0 +1,353 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The cache of the compressed images in a directory, evicting the least recently used files
+ * once they take more than {@link #setMaxSize(long)} bytes.
+ * The entries are kept in a journal in the directory, so the cache survives a restart.
+ * The journal lines are:
+ * <pre>
+ *     PUT key size
+ *     READ key
+ *     REMOVE key
+ * </pre>
+ *
+ * @author ChenSL
+ */
+public class CompressCache {
+    public static final long DEFAULT_MAX_SIZE = 50 * 1024 * 1024L;
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String PUT = "PUT";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final String FILE_PREFIX = "compress-";
+    private static final int MIN_REDUNDANT_OPS = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, CompressCache> CACHES = new HashMap<>();
+
+    private final File mDir;
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+    private Writer mJournalWriter;
+    private boolean mIsOpened;
+    private long mMaxSize = DEFAULT_MAX_SIZE;
+    private long mSize;
+    private int mRedundantOps;
+    private int mHitCount;
+    private int mMissCount;
+
+    CompressCache(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * @return the cache of the directory, shared by the compressors using the same one.
+     */
+    @NonNull
+    public static CompressCache get(@NonNull File dir) {
+        String key = dir.getAbsolutePath();
+        synchronized (CACHES) {
+            CompressCache cache = CACHES.get(key);
+            if (cache == null) {
+                cache = new CompressCache(dir);
+                CACHES.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @param maxSize the bytes of the compressed files to keep, the least recently used are deleted first.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        ensureOpened();
+        trimToSize();
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the bytes of the files in the cache.
+     */
+    public synchronized long getSize() {
+        ensureOpened();
+        return mSize;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the rate of {@link #get(String)} finding a file since launched, 0 if never.
+     */
+    public synchronized float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (float) mHitCount / total;
+    }
+
+    /**
+     * @param key the name of the file without the prefix, with the extension.
+     * @return the file of the key, in the cache or not.
+     */
+    @NonNull
+    public synchronized File getFile(@NonNull String key) {
+        // open before a file is written, or it is taken as one untracked.
+        ensureOpened();
+        return new File(mDir, FILE_PREFIX + key);
+    }
+
+    /**
+     * @return the cached file of the key, null if missing.
+     */
+    @Nullable
+    public synchronized File get(@NonNull String key) {
+        ensureOpened();
+        File file = getFile(key);
+        if (mEntries.get(key) != null && BoxingFileHelper.isFileValid(file)) {
+            mHitCount++;
+            appendJournal(READ, key);
+            return file;
+        }
+        mMissCount++;
+        if (mEntries.containsKey(key)) {
+            removeEntry(key);
+        }
+        return null;
+    }
+
+    /**
+     * record the file written for the key, evicting the others over the max size.
+     */
+    public synchronized void put(@NonNull String key, @NonNull File file) {
+        ensureOpened();
+        Long old = mEntries.put(key, file.length());
+        if (old != null) {
+            mSize -= old;
+        }
+        mSize += file.length();
+        appendJournal(PUT, key + " " + file.length());
+        trimToSize();
+    }
+
+    public synchronized void remove(@NonNull String key) {
+        ensureOpened();
+        if (mEntries.containsKey(key)) {
+            removeEntry(key);
+        }
+    }
+
+    /**
+     * delete all the cached files.
+     */
+    public synchronized void clear() {
+        ensureOpened();
+        Iterator<String> iterator = mEntries.keySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            deleteFile(getFile(key));
+            iterator.remove();
+        }
+        mSize = 0;
+        rebuildJournal();
+    }
+
+    private void ensureOpened() {
+        if (mIsOpened) {
+            return;
+        }
+        mIsOpened = true;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            BoxingLog.d("can not create the compress cache dir " + mDir);
+            return;
+        }
+        File journal = new File(mDir, JOURNAL_FILE);
+        if (journal.exists()) {
+            readJournal(journal);
+        } else {
+            deleteUntrackedFiles();
+        }
+        rebuildJournal();
+        trimToSize();
+    }
+
+    private void readJournal(File journal) {
+        BufferedReader reader = null;
+        int lineCount = 0;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                String[] parts = line.split(" ");
+                if (parts.length == 3 && PUT.equals(parts[0])) {
+                    try {
+                        mEntries.put(parts[1], Long.parseLong(parts[2]));
+                    } catch (NumberFormatException ignore) {
+                        // a broken line of a crash, skip it.
+                    }
+                } else if (parts.length == 2 && READ.equals(parts[0])) {
+                    mEntries.get(parts[1]);
+                } else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+                    mEntries.remove(parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            BoxingLog.d("read compress journal fail " + e.getMessage());
+        } finally {
+            closeQuietly(reader);
+        }
+        mSize = 0;
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (!getFile(entry.getKey()).exists()) {
+                iterator.remove();
+            } else {
+                mSize += entry.getValue();
+            }
+        }
+        BoxingLog.d("compress cache: " + mEntries.size() + " files, " + mSize + " bytes from " + lineCount + " lines.");
+    }
+
+    /**
+     * the files compressed before the journal have no key, delete them.
+     */
+    private void deleteUntrackedFiles() {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(FILE_PREFIX)) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    /**
+     * write the entries into a new journal in the order of access.
+     */
+    private void rebuildJournal() {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+        File tmp = new File(mDir, JOURNAL_FILE_TMP);
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), UTF_8));
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+            writer.close();
+            writer = null;
+            File journal = new File(mDir, JOURNAL_FILE);
+            if (!tmp.renameTo(journal)) {
+                BoxingLog.d("rename compress journal fail.");
+                return;
+            }
+            mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+            mRedundantOps = 0;
+        } catch (IOException e) {
+            BoxingLog.d("write compress journal fail " + e.getMessage());
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private void appendJournal(String op, String args) {
+        if (mJournalWriter == null) {
+            return;
+        }
+        try {
+            mJournalWriter.write(op + " " + args + "\n");
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            BoxingLog.d("append compress journal fail " + e.getMessage());
+        }
+        if (!PUT.equals(op)) {
+            mRedundantOps++;
+        }
+        if (mRedundantOps >= MIN_REDUNDANT_OPS && mRedundantOps >= mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            deleteFile(getFile(eldest.getKey()));
+            mSize -= eldest.getValue();
+            iterator.remove();
+            appendJournal(REMOVE, eldest.getKey());
+        }
+    }
+
+    private void removeEntry(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+        }
+        deleteFile(getFile(key));
+        appendJournal(REMOVE, key);
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            BoxingLog.d("delete " + file + " fail.");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+                // nothing to do.
+            }
+        }
+    }
+}
@@ -14,29 +14,45 @@
  * limitations under the License.
  *
  */
-
 package com.bilibili.boxing.utils;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
 
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A compress task for {@link ImageMedia}
  * @author ChenSL
  */
 public class CompressTask {
+    /**
+     * the proximate peak memory of compressing one image, a decoded bitmap and a rotated one
+     * of the largest display size in {@link ImageCompressor}.
+     */
+    private static final long MEMORY_PER_COMPRESS = 2L * 1512 * 2016 * 4;
+
     public static boolean compress(Context context, final ImageMedia image) {
         return compress(new ImageCompressor(context), image, ImageCompressor.MAX_LIMIT_SIZE_LONG);
     }
 
     /**
+     * compress in {@link BoxingExecutor.Pool#DECODE} and wait for it, never call it in the ui thread,
+     * use {@link #compressAll(ImageCompressor, List, long, Callback)} instead.
+     *
      * @param imageCompressor see {@link ImageCompressor}.
      * @param maxSize the proximate max size for compression
      * @return may be a little bigger than expected for performance.
@@ -45,33 +61,11 @@ public class CompressTask {
         if (imageCompressor == null || image == null || maxSize <= 0) {
             return false;
         }
-        FutureTask<Boolean> task = BoxingExecutor.getInstance().runWorker(new Callable<Boolean>() {
+        FutureTask<Boolean> task = BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.DECODE,
+                BoxingExecutor.Priority.NORMAL, new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
-                final String path = image.getPath();
-                File compressSaveFile = imageCompressor.getCompressOutFile(path);
-                File needCompressFile = new File(path);
-                if (BoxingFileHelper.isFileValid(compressSaveFile)) {
-                    image.setCompressPath(compressSaveFile.getAbsolutePath());
-                    return true;
-                }
-                if (!BoxingFileHelper.isFileValid(needCompressFile)) {
-                    return false;
-                } else if (image.getSize() < maxSize) {
-                    image.setCompressPath(path);
-                    return true;
-                } else {
-                    try {
-                        File result = imageCompressor.compress(needCompressFile, maxSize);
-                        boolean suc = BoxingFileHelper.isFileValid(result);
-                        image.setCompressPath(suc ? result.getAbsolutePath() : null);
-                        return suc;
-                    } catch (IOException | OutOfMemoryError | NullPointerException | IllegalArgumentException e) {
-                        image.setCompressPath(null);
-                        BoxingLog.d("image compress fail!");
-                    }
-                }
-                return false;
+                return compressImage(imageCompressor, image, maxSize);
             }
         });
         try {
@@ -81,4 +75,212 @@ public class CompressTask {
         }
     }
 
+    /**
+     * compress the images in parallel without blocking, as many at a time as the cores and the free memory allow,
+     * leaving a thread of {@link BoxingExecutor.Pool#DECODE} to the others such as the thumbnails.
+     * Each image is a task of {@link BoxingExecutor.Priority#NORMAL}, so the visible work queued runs in between.
+     * The callback is called in the ui thread.
+     *
+     * @param images  the compress path of each one is set as {@link #compress(ImageCompressor, ImageMedia, long)}.
+     * @param maxSize the proximate max size for compression.
+     * @return the batch to cancel, the images not started yet are skipped then.
+     */
+    @NonNull
+    public static Batch compressAll(@Nullable ImageCompressor imageCompressor, @Nullable List<ImageMedia> images,
+                                    long maxSize, @NonNull Callback callback) {
+        List<ImageMedia> list = images == null ? Collections.<ImageMedia>emptyList() : new ArrayList<>(images);
+        final Batch batch = new Batch(imageCompressor, list, maxSize, callback);
+        if (imageCompressor == null || maxSize <= 0 || list.isEmpty()) {
+            batch.complete();
+            return batch;
+        }
+        int concurrency = Math.min(list.size(), getConcurrency());
+        BoxingLog.d("compress " + list.size() + " images, " + concurrency + " at a time.");
+        batch.start(concurrency);
+        return batch;
+    }
+
+    /**
+     * @return the count of compressing at a time, bound by the decode pool and the free memory.
+     */
+    static int getConcurrency() {
+        Runtime runtime = Runtime.getRuntime();
+        long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        int byMemory = (int) Math.max(1, freeMemory / 2 / MEMORY_PER_COMPRESS);
+        return Math.max(1, Math.min(BoxingExecutor.Pool.DECODE.getSize() - 1, byMemory));
+    }
+
+    @WorkerThread
+    private static boolean compressImage(ImageCompressor imageCompressor, ImageMedia image, long maxSize) {
+        final String path = image.getPath();
+        File needCompressFile = new File(path);
+        // the compressed files are cached by ImageCompressor, keyed by the content of the source.
+        if (!BoxingFileHelper.isFileValid(needCompressFile)) {
+            return false;
+        } else if (image.getSize() < maxSize) {
+            image.setCompressPath(path);
+            image.setCompressMimeType(image.getMimeType());
+            return true;
+        } else {
+            try {
+                ImageCompressor.Format format = imageCompressor.getFormat();
+                File result = imageCompressor.compress(needCompressFile, maxSize);
+                boolean suc = BoxingFileHelper.isFileValid(result);
+                image.setCompressPath(suc ? result.getAbsolutePath() : null);
+                image.setCompressMimeType(suc ? format.getMimeType() : null);
+                return suc;
+            } catch (IOException | OutOfMemoryError | NullPointerException | IllegalArgumentException e) {
+                image.setCompressPath(null);
+                image.setCompressMimeType(null);
+                BoxingLog.d("image compress fail!");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The callback of {@link #compressAll(ImageCompressor, List, long, Callback)}, in the ui thread.
+     */
+    public interface Callback {
+        /**
+         * an image is compressed or failed.
+         *
+         * @param finishedCount the count of the finished ones, including this one.
+         */
+        @UiThread
+        void onProgress(@NonNull ImageMedia image, boolean success, int finishedCount, int totalCount);
+
+        /**
+         * all the images are finished, or the batch is cancelled.
+         *
+         * @param successCount the count of the images compressed.
+         */
+        @UiThread
+        void onComplete(@NonNull List<ImageMedia> images, int successCount);
+    }
+
+    /**
+     * The images compressing by {@link #compressAll(ImageCompressor, List, long, Callback)}.
+     * An image finished queues the next one, so at most the concurrency of images are in memory,
+     * the last task finished completes the batch.
+     */
+    public static class Batch {
+        private final ImageCompressor mCompressor;
+        private final List<ImageMedia> mImages;
+        private final long mMaxSize;
+        private final Callback mCallback;
+        private final AtomicInteger mNextIndex = new AtomicInteger();
+        private final AtomicInteger mFinishedCount = new AtomicInteger();
+        private final AtomicInteger mSuccessCount = new AtomicInteger();
+        private final AtomicInteger mPendingTasks = new AtomicInteger();
+        private volatile boolean mIsCancelled;
+
+        Batch(ImageCompressor compressor, List<ImageMedia> images, long maxSize, Callback callback) {
+            mCompressor = compressor;
+            mImages = images;
+            mMaxSize = maxSize;
+            mCallback = callback;
+        }
+
+        /**
+         * skip the images not started, the callback completes once the started ones finish.
+         */
+        public void cancel() {
+            mIsCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mIsCancelled;
+        }
+
+        public int getTotalCount() {
+            return mImages.size();
+        }
+
+        private void start(int concurrency) {
+            // held while queueing, so a task finished early does not complete the batch.
+            mPendingTasks.incrementAndGet();
+            for (int i = 0; i < concurrency; i++) {
+                queueNext();
+            }
+            finishTask();
+        }
+
+        /**
+         * @return false if no image is left or the batch is cancelled.
+         */
+        private boolean queueNext() {
+            if (mIsCancelled) {
+                return false;
+            }
+            final int index = mNextIndex.getAndIncrement();
+            if (index >= mImages.size()) {
+                return false;
+            }
+            mPendingTasks.incrementAndGet();
+            FutureTask<Void> task = BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.DECODE,
+                    BoxingExecutor.Priority.NORMAL, new Runnable() {
+                @Override
+                public void run() {
+                    runImage(index);
+                }
+            });
+            if (task == null) {
+                onImageFinished(mImages.get(index), false);
+                finishTask();
+            }
+            return true;
+        }
+
+        @WorkerThread
+        private void runImage(int index) {
+            try {
+                if (mIsCancelled) {
+                    return;
+                }
+                ImageMedia image = mImages.get(index);
+                boolean success;
+                try {
+                    success = compressImage(mCompressor, image, mMaxSize);
+                } catch (RuntimeException e) {
+                    BoxingLog.d("image compress fail! " + e);
+                    image.setCompressPath(null);
+                    image.setCompressMimeType(null);
+                    success = false;
+                }
+                onImageFinished(image, success);
+                queueNext();
+            } finally {
+                finishTask();
+            }
+        }
+
+        private void onImageFinished(final ImageMedia image, final boolean success) {
+            if (success) {
+                mSuccessCount.incrementAndGet();
+            }
+            final int finishedCount = mFinishedCount.incrementAndGet();
+            BoxingExecutor.getInstance().runUI(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onProgress(image, success, finishedCount, mImages.size());
+                }
+            });
+        }
+
+        private void finishTask() {
+            if (mPendingTasks.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            BoxingExecutor.getInstance().runUI(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onComplete(mImages, mSuccessCount.get());
+                }
+            });
+        }
+    }
 }
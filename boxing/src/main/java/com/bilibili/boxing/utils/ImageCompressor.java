@@ -20,16 +20,21 @@ package com.bilibili.boxing.utils;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -48,10 +53,75 @@ public class ImageCompressor {
     private static final int MAX_WIDTH = 3024;
     private static final int MAX_HEIGHT = 4032;
     private static final long MAX_LIMIT_SIZE = 300 * 1024L;
+    private static final int MAX_QUALITY = 90;
+    // Build.VERSION_CODES.Q, higher than the compile sdk.
+    private static final int VERSION_CODE_Q = 29;
+    /**
+     * the pixels of the output for the image with large ratio, and of a strip decoded at a time.
+     */
+    private static final int MAX_TILED_PIXELS = MAX_WIDTH * MAX_HEIGHT / 2;
+    private static final int MAX_STRIP_PIXELS = 1024 * 1024;
 
-    private static final String COMPRESS_FILE_PREFIX = "compress-";
+    private static final String TMP_FILE_PREFIX = "tmp-";
+    private static final int MAX_CACHED_DEGREES = 512;
+    /**
+     * the rotations probed, keyed by the path, the size and the modified time of the file.
+     */
+    private static final LruCache<String, Integer> DEGREES = new LruCache<>(MAX_CACHED_DEGREES);
 
     private File mOutFileFile;
+    private volatile Format mFormat = Format.JPEG;
+
+    /**
+     * The formats to encode the compressed images.
+     */
+    public enum Format {
+        JPEG("image/jpeg", ".jpg"),
+        /**
+         * lossy WebP, smaller than JPEG at the same quality.
+         */
+        WEBP("image/webp", ".webp"),
+        /**
+         * lossless WebP, as {@link Bitmap.CompressFormat#WEBP} at the quality 100 does since Android Q,
+         * falling back to {@link #WEBP} if it is larger than the max size.
+         * Before Android Q the quality 100 is still lossy, the highest quality of {@link #WEBP} then, see {@link #isLossless()}.
+         */
+        WEBP_LOSSLESS("image/webp", ".webp");
+
+        private final String mMimeType;
+        private final String mExtension;
+
+        Format(String mimeType, String extension) {
+            mMimeType = mimeType;
+            mExtension = extension;
+        }
+
+        public String getMimeType() {
+            return mMimeType;
+        }
+
+        public String getExtension() {
+            return mExtension;
+        }
+
+        /**
+         * @return true if the images are encoded losslessly on this device.
+         */
+        public boolean isLossless() {
+            return this == WEBP_LOSSLESS && Build.VERSION.SDK_INT >= VERSION_CODE_Q;
+        }
+
+        Bitmap.CompressFormat getCompressFormat() {
+            return this == JPEG ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.WEBP;
+        }
+
+        /**
+         * @return the quality tried first, the quality 100 of {@link #WEBP} would be lossless since Android Q.
+         */
+        int getFullQuality() {
+            return this == WEBP ? MAX_QUALITY : 100;
+        }
+    }
 
     public ImageCompressor(@NonNull File cachedRootDir) {
         if (cachedRootDir != null) {
@@ -69,6 +139,17 @@ public class ImageCompressor {
         }
     }
 
+    /**
+     * @param format {@link Format#JPEG} by default.
+     */
+    public void setFormat(@NonNull Format format) {
+        mFormat = format;
+    }
+
+    public @NonNull Format getFormat() {
+        return mFormat;
+    }
+
     public File compress(@NonNull File file) throws IOException, NullPointerException, IllegalArgumentException {
         return compress(file, MAX_LIMIT_SIZE);
     }
@@ -76,7 +157,7 @@ public class ImageCompressor {
     /**
      * @param file file to compress.
      * @param maxsize the proximate max size for compression, not for the image with large ratio.
-     * @return may be a little bigger than expected for performance.
+     * @return may be a little bigger than expected for performance, from {@link #getCache()} if compressed before.
      */
     public File compress(@NonNull File file, long maxsize) throws IOException, NullPointerException, IllegalArgumentException {
         if (!file.exists()) {
@@ -88,65 +169,197 @@ public class ImageCompressor {
         if (mOutFileFile == null) {
             throw new NullPointerException("the external cache dir is null");
         }
-        BitmapFactory.Options checkOptions = new BitmapFactory.Options();
-        checkOptions.inJustDecodeBounds = true;
         String absPath = file.getAbsolutePath();
-        int angle = BoxingExifHelper.getRotateDegree(absPath);
-        BitmapFactory.decodeFile(absPath, checkOptions);
-
-        if (checkOptions.outWidth <= 0 || checkOptions.outHeight <= 0) {
+        // the bounds and the rotation are read by one probe, no more decoding of the header.
+        ImageHeader header = ImageHeader.read(absPath);
+        DEGREES.put(getDegreeKey(file), header.getDegree());
+        Format format = mFormat;
+        String key = getCacheKey(file, maxsize, header.getDegree(), format);
+        if (key == null) {
+            throw new NullPointerException("the compressed file create fail, the cache key is null.");
+        }
+        CompressCache cache = getCache();
+        File cachedFile = cache.get(key);
+        if (cachedFile != null) {
+            BoxingLog.d("compress cache hit: " + cachedFile.getAbsolutePath());
+            return cachedFile;
+        }
+        if (!header.isValid()) {
             throw new IllegalArgumentException("file is not a legal bitmap with 0 with or 0 height : " + file.getAbsolutePath());
         }
-        int width = checkOptions.outWidth;
-        int height = checkOptions.outHeight;
-        File outFile = createCompressFile(file);
-        if (outFile == null) {
-            throw new NullPointerException("the compressed file create fail, the compressed path is null.");
+        File outFile = cache.getFile(key);
+        File tmpFile = createTmpFile();
+        try {
+            compress(absPath, header, maxsize, format, tmpFile);
+            if (!tmpFile.renameTo(outFile)) {
+                throw new IOException("rename the compressed file fail : " + outFile);
+            }
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                BoxingLog.d("delete the tmp file fail : " + tmpFile);
+            }
         }
+        cache.put(key, outFile);
+        BoxingLog.d("compress suc: " + outFile.getAbsolutePath());
+        return outFile;
+    }
+
+    private void compress(String absPath, ImageHeader header, long maxsize, Format format, File outFile)
+            throws IOException {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int angle = header.getDegree();
+        BoxingBitmapPool pool = BoxingBitmapPool.getInstance();
         if (!isLargeRatio(width, height)) {
             int[] display = getCompressDisplay(width, height);
-            Bitmap bitmap = compressDisplay(absPath, display[0], display[1]);
+            Bitmap bitmap = compressDisplay(absPath, width, height, display[0], display[1]);
+            if (bitmap == null) {
+                throw new IllegalArgumentException("decode the image fail : " + absPath);
+            }
             Bitmap rotatedBitmap = rotatingImage(angle, bitmap);
             if (bitmap != rotatedBitmap) {
-                bitmap.recycle();
+                pool.put(bitmap);
+            }
+            try {
+                saveBitmap(rotatedBitmap, format, outFile, maxsize, 20);
+            } finally {
+                pool.put(rotatedBitmap);
             }
-            saveBitmap(rotatedBitmap, outFile);
-            rotatedBitmap.recycle();
-            compressQuality(outFile, maxsize, 20);
         } else {
-            if (checkOptions.outHeight >= MAX_HEIGHT && checkOptions.outWidth >= MAX_WIDTH) {
-                checkOptions.inSampleSize = 2;
+            float scale = getTiledScale(width, height);
+            Bitmap originBitmap = decodeTiled(absPath, width, height, scale);
+            if (originBitmap == null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.outWidth = width;
+                options.outHeight = height;
+                options.inSampleSize = Integer.highestOneBit((int) Math.ceil(1 / scale));
+                originBitmap = pool.decodeFile(absPath, options);
+            }
+            if (originBitmap == null) {
+                throw new IllegalArgumentException("decode the image with large ratio fail : " + absPath);
             }
-            checkOptions.inJustDecodeBounds = false;
-            Bitmap originBitmap = BitmapFactory.decodeFile(absPath, checkOptions);
             Bitmap rotatedBitmap = rotatingImage(angle, originBitmap);
             if (originBitmap != rotatedBitmap) {
-                originBitmap.recycle();
+                pool.put(originBitmap);
+            }
+            try {
+                saveBitmap(rotatedBitmap, format, outFile, MAX_LIMIT_SIZE_LONG, 50);
+            } finally {
+                pool.put(rotatedBitmap);
             }
-            saveBitmap(originBitmap, outFile);
-            rotatedBitmap.recycle();
-            compressQuality(outFile, MAX_LIMIT_SIZE_LONG, 50);
         }
-        BoxingLog.d("compress suc: " + outFile.getAbsolutePath());
-        return outFile;
+    }
+
+    /**
+     * @return the scale of the output for the image with large ratio, at most 1/2 for the one as large as
+     * {@link #MAX_WIDTH} x {@link #MAX_HEIGHT}, and no more pixels than {@link #MAX_TILED_PIXELS}.
+     */
+    private float getTiledScale(int width, int height) {
+        float scale = height >= MAX_HEIGHT && width >= MAX_WIDTH ? 0.5f : 1;
+        float pixels = (float) width * height * scale * scale;
+        if (pixels > MAX_TILED_PIXELS) {
+            scale *= (float) Math.sqrt(MAX_TILED_PIXELS / pixels);
+        }
+        return scale;
+    }
+
+    /**
+     * decode the image strip by strip along the long side and draw them scaled into the output,
+     * the peak memory is the output and a strip, no matter how large the source is.
+     *
+     * @return null if the format is not supported by {@link BitmapRegionDecoder}.
+     */
+    private @Nullable Bitmap decodeTiled(String absPath, int width, int height, float scale) {
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(absPath, false);
+        } catch (IOException e) {
+            BoxingLog.d("no region decoder for " + absPath + ", " + e.getMessage());
+            return null;
+        }
+        BoxingBitmapPool pool = BoxingBitmapPool.getInstance();
+        int outWidth = Math.max(1, Math.round(width * scale));
+        int outHeight = Math.max(1, Math.round(height * scale));
+        Bitmap output = pool.obtain(outWidth, outHeight, Bitmap.Config.RGB_565);
+        try {
+            Canvas canvas = new Canvas(output);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inSampleSize = Integer.highestOneBit(Math.max(1, (int) (1 / scale)));
+            boolean isVertical = height >= width;
+            int sourceLength = isVertical ? height : width;
+            int sourceSide = isVertical ? width : height;
+            int outLength = isVertical ? outHeight : outWidth;
+            // the strip is cut on the rows of the output, so the strips meet without a seam.
+            long stripPixels = (long) sourceSide * sourceLength / outLength / options.inSampleSize / options.inSampleSize;
+            int outStrip = (int) Math.max(1, MAX_STRIP_PIXELS / Math.max(1, stripPixels));
+            Rect region = new Rect();
+            Rect src = new Rect();
+            RectF target = new RectF();
+            for (int outStart = 0; outStart < outLength; outStart += outStrip) {
+                int outEnd = Math.min(outLength, outStart + outStrip);
+                int start = (int) ((long) outStart * sourceLength / outLength);
+                int end = (int) Math.min(sourceLength, ((long) outEnd * sourceLength + outLength - 1) / outLength);
+                if (isVertical) {
+                    region.set(0, start, width, end);
+                    target.set(0, outStart, outWidth, outEnd);
+                } else {
+                    region.set(start, 0, end, height);
+                    target.set(outStart, 0, outEnd, outHeight);
+                }
+                Bitmap strip = pool.decodeRegion(decoder, region, options);
+                if (strip == null) {
+                    pool.put(output);
+                    return null;
+                }
+                // draw the decoded region only, never more than the strip holds.
+                int sampleSize = options.inSampleSize;
+                src.set(0, 0, Math.min(strip.getWidth(), (region.width() + sampleSize - 1) / sampleSize),
+                        Math.min(strip.getHeight(), (region.height() + sampleSize - 1) / sampleSize));
+                canvas.drawBitmap(strip, src, target, paint);
+                pool.put(strip);
+            }
+            canvas.setBitmap(null);
+            return output;
+        } catch (IllegalArgumentException | OutOfMemoryError e) {
+            BoxingLog.d("decode tiled fail " + e.getMessage());
+            pool.put(output);
+            return null;
+        } finally {
+            decoder.recycle();
+        }
     }
 
     private Bitmap rotatingImage(int angle, Bitmap bitmap) {
         if (angle == 0) {
             return bitmap;
         }
-        //rotate image
-        Matrix matrix = new Matrix();
-        matrix.postRotate(angle);
-
-        //create a new image
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        // rotate into a pooled bitmap
+        return BoxingBitmapPool.getInstance().rotate(bitmap, angle);
     }
 
-    private void saveBitmap(Bitmap bitmap, File outFile) throws IOException {
+    /**
+     * encode the bitmap in memory and write the file once, searching the highest quality
+     * in [minQuality, {@link #MAX_QUALITY}] smaller than maxSize if the full quality is too large.
+     * {@link Format#WEBP_LOSSLESS} falls back to the lossy WebP in the same way.
+     *
+     * @param minQuality the quality to use if none is small enough.
+     */
+    private void saveBitmap(Bitmap bitmap, Format format, File outFile, long maxSize, int minQuality) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Bitmap.CompressFormat compressFormat = format.getCompressFormat();
+        int fullQuality = format.getFullQuality();
+        bitmap.compress(compressFormat, fullQuality, result);
+        if (result.size() > maxSize) {
+            BoxingLog.d("source size : " + result.size() + " in " + format + ",path : " + outFile);
+            // no need to encode the max quality again if it is the full one.
+            int maxQuality = Math.min(MAX_QUALITY, fullQuality - 1);
+            result = compressQuality(bitmap, compressFormat, maxSize, minQuality, maxQuality, result);
+        }
         FileOutputStream fos = new FileOutputStream(outFile);
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, fos);
         try {
+            result.writeTo(fos);
             fos.flush();
         } finally {
             try {
@@ -206,94 +419,103 @@ public class ImageCompressor {
     }
 
     /**
-     * @param width  must > 0
-     * @param height must > 0
+     * decode the image in one pass, sampled by the largest power of 2 keeping it no smaller than the display,
+     * then scaled down to the display through the density, which the decoder does while sampling.
+     *
+     * @param outWidth  the width of the image, must > 0
+     * @param outHeight the height of the image, must > 0
+     * @param width     must > 0
+     * @param height    must > 0
      */
-    private Bitmap compressDisplay(String imagePath, int width, int height) {
+    private Bitmap compressDisplay(String imagePath, int outWidth, int outHeight, int width, int height) {
         BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(imagePath, options);
-
-        int outH = options.outHeight;
-        int outW = options.outWidth;
+        options.outWidth = outWidth;
+        options.outHeight = outHeight;
         int inSampleSize = 1;
-
-        if (outH > height || outW > width) {
-            int halfH = outH / 2;
-            int halfW = outW / 2;
-            while ((halfH / inSampleSize) > height && (halfW / inSampleSize) > width) {
-                inSampleSize *= 2;
-            }
+        while (outWidth / (inSampleSize * 2) >= width && outHeight / (inSampleSize * 2) >= height) {
+            inSampleSize *= 2;
         }
-
         options.inSampleSize = inSampleSize;
+        int sampledWidth = outWidth / inSampleSize;
+        if (sampledWidth > width) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = width;
+        }
+        Bitmap bitmap = BoxingBitmapPool.getInstance().decodeFile(imagePath, options);
+        if (bitmap != null) {
+            // the density is only for scaling, or drawing it would be scaled again.
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
 
-        options.inJustDecodeBounds = false;
-
-        int heightRatio = (int) Math.ceil(options.outHeight / (float) height);
-        int widthRatio = (int) Math.ceil(options.outWidth / (float) width);
-
-        if (heightRatio > 1 || widthRatio > 1) {
-            if (heightRatio > widthRatio) {
-                options.inSampleSize = heightRatio;
+    /**
+     * binary search the quality on the decoded bitmap, no decoding again.
+     *
+     * @param buffer reused for encoding.
+     * @return the encoded bytes of the highest quality fit, or of minQuality.
+     */
+    private ByteArrayOutputStream compressQuality(Bitmap bitmap, Bitmap.CompressFormat compressFormat, long maxSize,
+                                                  int minQuality, int maxQuality, ByteArrayOutputStream buffer) {
+        ByteArrayOutputStream probe = buffer;
+        ByteArrayOutputStream fit = null;
+        int low = minQuality;
+        int high = Math.max(minQuality, maxQuality);
+        // try the highest quality first, most of the images fit at once.
+        int quality = high;
+        int encodeCount = 0;
+        while (low <= high) {
+            probe.reset();
+            bitmap.compress(compressFormat, quality, probe);
+            encodeCount++;
+            if (probe.size() < maxSize) {
+                ByteArrayOutputStream swap = fit == null ? new ByteArrayOutputStream(probe.size()) : fit;
+                fit = probe;
+                probe = swap;
+                low = quality + 1;
             } else {
-                options.inSampleSize = widthRatio;
+                high = quality - 1;
             }
+            quality = (low + high) >>> 1;
         }
-        options.inJustDecodeBounds = false;
-
-        return BitmapFactory.decodeFile(imagePath, options);
+        BoxingLog.d("compress quality : " + (fit == null ? minQuality : low - 1) + " after " + encodeCount + " encodes.");
+        // minQuality is the last probe when nothing fits.
+        return fit == null ? probe : fit;
     }
 
-    private void compressQuality(File outFile, long maxSize, int maxQuality) throws IOException {
-        long length = outFile.length();
-        int quality = 90;
-        if (length > maxSize) {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            BoxingLog.d("source file size : " + outFile.length() + ",path : " + outFile);
-            while (true) {
-                compressPhotoByQuality(outFile, bos, quality);
-                long size = bos.size();
-                BoxingLog.d("compressed file size : " + size);
-                if (quality <= maxQuality) {
-                    break;
-                }
-                if (size < maxSize) {
-                    break;
-                } else {
-                    quality -= 10;
-                    bos.reset();
-                }
-            }
-            OutputStream fos = new FileOutputStream(outFile);
-            bos.writeTo(fos);
-            bos.flush();
-            fos.close();
-            bos.close();
+    /**
+     * the compressed file is written into a tmp file first, a compressing never leaves a broken cached file.
+     */
+    private File createTmpFile() throws IOException {
+        if (!mOutFileFile.exists()) {
+            mOutFileFile.mkdirs();
         }
+        return File.createTempFile(TMP_FILE_PREFIX, ".jpg", mOutFileFile);
     }
 
-    private void compressPhotoByQuality(File file, final OutputStream os, final int quality) throws IOException, OutOfMemoryError {
-        BoxingLog.d("start compress quality... ");
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.RGB_565;
-        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
-        if (bitmap != null) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, os);
-            bitmap.recycle();
-        } else {
-            throw new NullPointerException("bitmap is null when compress by quality");
+    /**
+     * @return the cache of the compressed files, for the max size and the stats.
+     */
+    public @NonNull CompressCache getCache() {
+        if (mOutFileFile == null) {
+            throw new NullPointerException("the external cache dir is null");
         }
+        return CompressCache.get(mOutFileFile);
     }
 
-    private File createCompressFile(File file) throws IOException {
-        File outFile = getCompressOutFile(file);
-        if (!mOutFileFile.exists()) {
-            mOutFileFile.mkdirs();
+    /**
+     * @return the key changing with the content, the orientation of the source and the max size.
+     */
+    private @Nullable String getCacheKey(File file, long maxsize, int angle, Format format) {
+        String source = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|" + maxsize + "|" + angle
+                + "|" + format;
+        try {
+            String md5 = signMD5(source.getBytes("UTF-8"));
+            return md5 == null ? null : md5 + format.getExtension();
+        } catch (UnsupportedEncodingException e) {
+            return null;
         }
-        BoxingLog.d("compress out file : " + outFile);
-        outFile.createNewFile();
-        return outFile;
     }
 
     public @Nullable File getCompressOutFile(File file) {
@@ -310,12 +532,40 @@ public class ImageCompressor {
         return getCompressOutFilePath(file.getAbsolutePath());
     }
 
+    /**
+     * @return the path compressing the file with the default max size writes to, no matter compressed or not.
+     */
     public @Nullable String getCompressOutFilePath(String filePath) {
-        try {
-            return mOutFileFile + File.separator + COMPRESS_FILE_PREFIX + signMD5(filePath.getBytes("UTF-8")) + ".jpg";
-        } catch (UnsupportedEncodingException e) {
+        return getCompressOutFilePath(filePath, MAX_LIMIT_SIZE);
+    }
+
+    /**
+     * @return the path compressing the file with the max size writes to, no matter compressed or not.
+     */
+    public @Nullable String getCompressOutFilePath(String filePath, long maxsize) {
+        if (mOutFileFile == null || filePath == null) {
             return null;
         }
+        File file = new File(filePath);
+        String key = getCacheKey(file, maxsize, getDegree(file), mFormat);
+        return key == null ? null : getCache().getFile(key).getAbsolutePath();
+    }
+
+    /**
+     * @return the rotation of the file, the header is probed once for a version of the file.
+     */
+    private static int getDegree(File file) {
+        String key = getDegreeKey(file);
+        Integer degree = DEGREES.get(key);
+        if (degree == null) {
+            degree = BoxingExifHelper.getRotateDegree(file.getAbsolutePath());
+            DEGREES.put(key, degree);
+        }
+        return degree;
+    }
+
+    private static String getDegreeKey(File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
     }
 
     public String signMD5(byte[] source) {
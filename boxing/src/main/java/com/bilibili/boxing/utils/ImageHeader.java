@@ -0,0 +1,123 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing.utils;
+
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The bounds, the mime type and the rotation of an image, probed by one read of the header.
+ * The EXIF orientation of a JPEG is parsed from the same stream the bounds are decoded from.
+ *
+ * @author ChenSL
+ */
+final class ImageHeader {
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+    /**
+     * the bytes to read again for the bounds, the APP segments before the frame are usually much smaller.
+     */
+    private static final int MARK_LIMIT = 128 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final String mMimeType;
+    private final int mDegree;
+    private final BoxingJpegHelper.Orientation mOrientation;
+
+    private ImageHeader(int width, int height, String mimeType, int degree, BoxingJpegHelper.Orientation orientation) {
+        mWidth = width;
+        mHeight = height;
+        mMimeType = mimeType;
+        mDegree = degree;
+        mOrientation = orientation;
+    }
+
+    @NonNull
+    static ImageHeader read(@NonNull String path) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BoxingJpegHelper.Orientation orientation;
+        InputStream in = new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE);
+        try {
+            in.mark(MARK_LIMIT);
+            orientation = BoxingJpegHelper.readOrientation(in);
+            boolean isReset;
+            try {
+                in.reset();
+                isReset = true;
+            } catch (IOException e) {
+                isReset = false;
+            }
+            if (isReset) {
+                BitmapFactory.decodeStream(in, null, options);
+            } else {
+                BoxingLog.d("the header is larger than the mark, decode the bounds of " + path + " again.");
+                BitmapFactory.decodeFile(path, options);
+            }
+        } finally {
+            in.close();
+        }
+        int degree;
+        if (MIME_TYPE_JPEG.equals(options.outMimeType)) {
+            degree = orientation == null ? 0 : Math.max(0, orientation.getDegree());
+        } else {
+            // the other formats with an orientation are left to ExifInterface.
+            degree = BoxingExifHelper.readRotateDegree(path);
+        }
+        return new ImageHeader(options.outWidth, options.outHeight, options.outMimeType, degree, orientation);
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    @Nullable
+    String getMimeType() {
+        return mMimeType;
+    }
+
+    /**
+     * @return the clockwise degree to show the image upright, 0 for the mirrored orientations.
+     */
+    int getDegree() {
+        return mDegree;
+    }
+
+    /**
+     * @return the orientation in the APP1 segment of a JPEG, null if there is none.
+     */
+    @Nullable
+    BoxingJpegHelper.Orientation getOrientation() {
+        return mOrientation;
+    }
+
+    boolean isValid() {
+        return mWidth > 0 && mHeight > 0;
+    }
+}
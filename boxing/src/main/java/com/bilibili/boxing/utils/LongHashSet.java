@@ -0,0 +1,157 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of long without boxing, open addressing with linear probing.
+ * Not thread safe.
+ *
+ * @author ChenSL
+ */
+public class LongHashSet {
+    private static final long FREE = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mKeys;
+    private int mMask;
+    private int mSize;
+    // FREE marks the empty slots, so it is kept out of the table.
+    private boolean mHasFreeKey;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the elements to hold without growing.
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        mKeys = new long[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * @return true if the key is not in the set before.
+     */
+    public boolean add(long key) {
+        if (key == FREE) {
+            if (mHasFreeKey) {
+                return false;
+            }
+            mHasFreeKey = true;
+            mSize++;
+            return true;
+        }
+        int index = indexOf(key);
+        if (mKeys[index] == key) {
+            return false;
+        }
+        mKeys[index] = key;
+        mSize++;
+        if (mSize * 2 > mKeys.length) {
+            resize(mKeys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return mHasFreeKey;
+        }
+        return mKeys[indexOf(key)] == key;
+    }
+
+    /**
+     * @return true if the key is in the set before.
+     */
+    public boolean remove(long key) {
+        if (key == FREE) {
+            if (!mHasFreeKey) {
+                return false;
+            }
+            mHasFreeKey = false;
+            mSize--;
+            return true;
+        }
+        int index = indexOf(key);
+        if (mKeys[index] != key) {
+            return false;
+        }
+        mKeys[index] = FREE;
+        mSize--;
+        // shift the following keys of the probe chain back, so no tombstone is needed.
+        int next = (index + 1) & mMask;
+        while (mKeys[next] != FREE) {
+            long moving = mKeys[next];
+            int home = hash(moving) & mMask;
+            if (((next - home) & mMask) >= ((next - index) & mMask)) {
+                mKeys[index] = moving;
+                mKeys[next] = FREE;
+                index = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mKeys, FREE);
+        mHasFreeKey = false;
+        mSize = 0;
+    }
+
+    /**
+     * @return the slot of the key, or the free slot to put it.
+     */
+    private int indexOf(long key) {
+        int index = hash(key) & mMask;
+        while (mKeys[index] != FREE && mKeys[index] != key) {
+            index = (index + 1) & mMask;
+        }
+        return index;
+    }
+
+    private void resize(int capacity) {
+        long[] old = mKeys;
+        mKeys = new long[capacity];
+        mMask = capacity - 1;
+        for (long key : old) {
+            if (key != FREE) {
+                mKeys[indexOf(key)] = key;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
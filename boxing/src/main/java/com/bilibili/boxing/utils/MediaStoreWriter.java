@@ -0,0 +1,250 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing.utils;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.RemoteException;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Images;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.bilibili.boxing.model.entity.impl.ImageMedia;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Insert the captured or processed images into MediaStore in one batch, with the dimensions, the size,
+ * the dates and the bucket filled in, so they are queried by {@link com.bilibili.boxing.model.task.impl.ImageTask}
+ * at once, without waiting for the media scanner.
+ *
+ * @author ChenSL
+ */
+public class MediaStoreWriter {
+    private static final int MAX_PATHS_PER_QUERY = 500;
+
+    public interface Callback {
+        /**
+         * called on the UI thread, the ids of the inserted images are those in MediaStore.
+         *
+         * @param insertedCount the count of the images inserted, 0 if the batch fails.
+         */
+        void onInserted(@NonNull List<ImageMedia> medias, int insertedCount);
+    }
+
+    private MediaStoreWriter() {
+    }
+
+    /**
+     * insert the images in {@link BoxingExecutor.Pool#IO}, by one {@link ContentResolver#applyBatch}.
+     */
+    public static void insert(@NonNull final ContentResolver cr, @NonNull List<ImageMedia> medias,
+                              @Nullable final Callback callback) {
+        final List<ImageMedia> images = new ArrayList<>(medias);
+        BoxingExecutor.getInstance().runWorker(BoxingExecutor.Pool.IO, BoxingExecutor.Priority.NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                final int count = insertSync(cr, images);
+                if (callback != null) {
+                    BoxingExecutor.getInstance().runUI(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onInserted(images, count);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * insert in the caller thread, never call it on the UI thread.
+     *
+     * @return the count of the images inserted.
+     */
+    public static int insertSync(@NonNull ContentResolver cr, @NonNull List<ImageMedia> medias) {
+        List<ImageMedia> images = new ArrayList<>(medias.size());
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(medias.size());
+        ContentValues[] valuesArray = new ContentValues[medias.size()];
+        for (ImageMedia media : medias) {
+            ContentValues values = toContentValues(media);
+            if (values == null) {
+                continue;
+            }
+            valuesArray[images.size()] = values;
+            images.add(media);
+            operations.add(ContentProviderOperation.newInsert(Images.Media.EXTERNAL_CONTENT_URI)
+                    .withValues(values).build());
+        }
+        if (images.isEmpty()) {
+            return 0;
+        }
+        try {
+            ContentProviderResult[] results = cr.applyBatch(MediaStore.AUTHORITY, operations);
+            int count = 0;
+            for (int i = 0; i < results.length && i < images.size(); i++) {
+                Uri uri = results[i].uri;
+                if (uri != null) {
+                    images.get(i).setId(uri.getLastPathSegment());
+                    count++;
+                }
+            }
+            return count;
+        } catch (RemoteException | OperationApplicationException | IllegalArgumentException | SecurityException e) {
+            BoxingLog.d("apply the batch to MediaStore fail : " + e.getMessage() + ", bulk insert instead.");
+        }
+        // the operations before the failed one may be applied already, only insert the others.
+        List<ImageMedia> missing = queryIds(cr, images);
+        if (!missing.isEmpty()) {
+            ContentValues[] bulkValues = new ContentValues[missing.size()];
+            for (int i = 0; i < bulkValues.length; i++) {
+                bulkValues[i] = valuesArray[images.indexOf(missing.get(i))];
+            }
+            try {
+                cr.bulkInsert(Images.Media.EXTERNAL_CONTENT_URI, bulkValues);
+            } catch (IllegalArgumentException | SecurityException e) {
+                BoxingLog.d("bulk insert into MediaStore fail : " + e.getMessage());
+            }
+            // bulkInsert returns no uri, query the ids back.
+            missing = queryIds(cr, missing);
+        }
+        return images.size() - missing.size();
+    }
+
+    /**
+     * fill the ids of the images already in MediaStore, queried by their paths.
+     *
+     * @return the images not found.
+     */
+    @NonNull
+    private static List<ImageMedia> queryIds(@NonNull ContentResolver cr, @NonNull List<ImageMedia> images) {
+        List<ImageMedia> missing = new ArrayList<>(images);
+        for (int start = 0; start < images.size(); start += MAX_PATHS_PER_QUERY) {
+            int end = Math.min(images.size(), start + MAX_PATHS_PER_QUERY);
+            Map<String, ImageMedia> byPath = new HashMap<>(end - start);
+            StringBuilder selection = new StringBuilder(Images.Media.DATA).append(" in (");
+            String[] args = new String[end - start];
+            for (int i = start; i < end; i++) {
+                ImageMedia media = images.get(i);
+                byPath.put(media.getPath(), media);
+                args[i - start] = media.getPath();
+                selection.append(i == start ? "?" : ",?");
+            }
+            selection.append(")");
+            Cursor cursor = null;
+            try {
+                cursor = cr.query(Images.Media.EXTERNAL_CONTENT_URI, new String[]{Images.Media._ID, Images.Media.DATA},
+                        selection.toString(), args, null);
+                while (cursor != null && cursor.moveToNext()) {
+                    ImageMedia media = byPath.remove(cursor.getString(1));
+                    if (media != null) {
+                        media.setId(cursor.getString(0));
+                        missing.remove(media);
+                    }
+                }
+            } catch (IllegalArgumentException | SecurityException e) {
+                BoxingLog.d("query the inserted images fail : " + e.getMessage());
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @return the values to insert, the width and the height of the image are probed if unknown,
+     * null if the file is gone.
+     */
+    @Nullable
+    static ContentValues toContentValues(@NonNull ImageMedia media) {
+        String path = media.getPath();
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        int width = media.getWidth();
+        int height = media.getHeight();
+        String mimeType = media.getMimeType();
+        int degree = 0;
+        try {
+            ImageHeader header = ImageHeader.read(path);
+            degree = header.getDegree();
+            if (width <= 0 || height <= 0) {
+                width = header.getWidth();
+                height = header.getHeight();
+                media.setWidth(width);
+                media.setHeight(height);
+            }
+            if (!TextUtils.isEmpty(header.getMimeType())) {
+                // the image type of the media only knows JPEG and GIF.
+                mimeType = header.getMimeType();
+            }
+        } catch (IOException e) {
+            BoxingLog.d("probe the header of " + path + " fail : " + e.getMessage());
+        }
+        long modified = file.lastModified();
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put(Images.Media.DATA, path);
+        values.put(Images.Media.TITLE, getTitle(file.getName()));
+        values.put(Images.Media.DISPLAY_NAME, file.getName());
+        if (!TextUtils.isEmpty(mimeType)) {
+            values.put(Images.Media.MIME_TYPE, mimeType);
+        }
+        values.put(Images.Media.SIZE, file.length());
+        values.put(Images.Media.DATE_ADDED, now / 1000);
+        values.put(Images.Media.DATE_MODIFIED, (modified > 0 ? modified : now) / 1000);
+        values.put(Images.Media.DATE_TAKEN, modified > 0 ? modified : now);
+        values.put(Images.Media.ORIENTATION, degree);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && width > 0 && height > 0) {
+            values.put(Images.Media.WIDTH, width);
+            values.put(Images.Media.HEIGHT, height);
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            // the same as MediaStore computes the bucket.
+            values.put(Images.Media.BUCKET_ID, parent.toString().toLowerCase(Locale.ROOT).hashCode());
+            values.put(Images.Media.BUCKET_DISPLAY_NAME, parent.getName());
+        }
+        return values;
+    }
+
+    private static String getTitle(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.bilibili.boxing;
+
+import android.content.ContentResolver;
+import android.provider.MediaStore;
+
+import com.bilibili.boxing.model.BoxingManager;
+import com.bilibili.boxing.model.callback.IAlbumTaskCallback;
+import com.bilibili.boxing.model.config.BoxingConfig;
+import com.bilibili.boxing.model.entity.AlbumEntity;
+import com.bilibili.boxing.model.task.impl.AlbumTask;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Show how the query count and the wall time of {@link AlbumTask} scale with the bucket count.
+ *
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class AlbumTaskBenchmarkTest {
+    private static final int[] BUCKET_COUNTS = {10, 50, 150, 300};
+    private static final int IMAGES_PER_BUCKET = 20;
+
+    @Before
+    public void setUp() {
+        BoxingManager.getInstance().setBoxingConfig(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+    }
+
+    @Test
+    public void testQueryCountScale() {
+        ContentResolver cr = RuntimeEnvironment.application.getContentResolver();
+        for (int bucketCount : BUCKET_COUNTS) {
+            FakeMediaProvider provider = new FakeMediaProvider(bucketCount, IMAGES_PER_BUCKET);
+            ShadowContentResolver.registerProvider(MediaStore.AUTHORITY, provider);
+
+            final List<AlbumEntity> result = new ArrayList<>();
+            long start = System.nanoTime();
+            new AlbumTask().start(cr, new IAlbumTaskCallback() {
+                @Override
+                public void postAlbumList(List<AlbumEntity> list) {
+                    result.addAll(list);
+                }
+            });
+            long costUs = (System.nanoTime() - start) / 1000;
+            System.out.println("buckets:" + bucketCount + " queries:" + provider.getQueryCount() + " cost(us):" + costUs);
+
+            assertEquals(1, provider.getQueryCount());
+            assertEquals(bucketCount + 1, result.size());
+            assertEquals(bucketCount * IMAGES_PER_BUCKET, result.get(0).mCount);
+            for (int i = 1; i < result.size(); i++) {
+                assertEquals(IMAGES_PER_BUCKET, result.get(i).mCount);
+                assertEquals(1, result.get(i).mImageList.size());
+            }
+        }
+    }
+}
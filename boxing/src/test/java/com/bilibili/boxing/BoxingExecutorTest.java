@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing;
+
+import com.bilibili.boxing.utils.BoxingExecutor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ChenSL
+ */
+public class BoxingExecutorTest {
+
+    @Test
+    public void testPriority() throws Exception {
+        BoxingExecutor executor = BoxingExecutor.getInstance();
+        BoxingExecutor.Pool pool = BoxingExecutor.Pool.IO;
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch others = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(pool.getSize());
+        for (int i = 0; i < pool.getSize(); i++) {
+            final CountDownLatch blocker = i == 0 ? first : others;
+            executor.runWorker(pool, BoxingExecutor.Priority.NORMAL, new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        blocker.await();
+                    } catch (InterruptedException ignore) {
+                    }
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        FutureTask<Void> background = executor.runWorker(pool, BoxingExecutor.Priority.BACKGROUND, new Record(order, "background"));
+        executor.runWorker(pool, BoxingExecutor.Priority.PREFETCH, new Record(order, "prefetch"));
+        executor.runWorker(pool, BoxingExecutor.Priority.VISIBLE, new Record(order, "visible"));
+        assertEquals(3, executor.getQueueSize(pool));
+        assertEquals(pool.getSize(), executor.getActiveCount(pool));
+
+        // free one thread only, it takes the queued tasks one by one.
+        first.countDown();
+        assertNotNull(background);
+        background.get(5, TimeUnit.SECONDS);
+        others.countDown();
+        assertEquals(0, executor.getQueueSize(pool));
+        assertEquals("visible", order.get(0));
+        assertEquals("prefetch", order.get(1));
+        assertEquals("background", order.get(2));
+    }
+
+    private static class Record implements Runnable {
+        private final List<String> mOrder;
+        private final String mName;
+
+        Record(List<String> order, String name) {
+            mOrder = order;
+            mName = name;
+        }
+
+        @Override
+        public void run() {
+            mOrder.add(mName);
+        }
+    }
+}
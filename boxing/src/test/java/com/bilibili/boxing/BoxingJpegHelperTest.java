@@ -0,0 +1,165 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing;
+
+import com.bilibili.boxing.utils.BoxingJpegHelper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ChenSL
+ */
+public class BoxingJpegHelperTest {
+    private static final byte[] IMAGE_DATA = {(byte) 0xFF, (byte) 0xDA, 0, 4, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadOrientation() throws IOException {
+        File bigEndian = createJpeg(false, BoxingJpegHelper.ORIENTATION_ROTATE_90);
+        BoxingJpegHelper.Orientation orientation = BoxingJpegHelper.readOrientation(bigEndian);
+        assertNotNull(orientation);
+        assertEquals(90, orientation.getDegree());
+
+        File littleEndian = createJpeg(true, BoxingJpegHelper.ORIENTATION_ROTATE_270);
+        orientation = BoxingJpegHelper.readOrientation(littleEndian);
+        assertNotNull(orientation);
+        assertEquals(270, orientation.getDegree());
+
+        File png = mFolder.newFile("image.png");
+        write(png, new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+        assertNull(BoxingJpegHelper.readOrientation(png));
+    }
+
+    @Test
+    public void testRotate() throws IOException {
+        File file = createJpeg(true, BoxingJpegHelper.ORIENTATION_ROTATE_90);
+        long length = file.length();
+        assertTrue(BoxingJpegHelper.rotate(file, 90));
+        assertEquals(180, BoxingJpegHelper.readOrientation(file).getDegree());
+        assertTrue(BoxingJpegHelper.rotate(file, 180));
+        assertEquals(0, BoxingJpegHelper.readOrientation(file).getDegree());
+        assertEquals(length, file.length());
+        assertArrayEquals(IMAGE_DATA, tail(file, IMAGE_DATA.length));
+
+        File noExif = mFolder.newFile("no_exif.jpg");
+        write(noExif, concat(new byte[]{(byte) 0xFF, (byte) 0xD8}, IMAGE_DATA));
+        assertFalse(BoxingJpegHelper.rotate(noExif, 90));
+    }
+
+    /**
+     * SOI, an APP0, an APP1 holding IFD0 with a tag before the orientation, then the image data.
+     */
+    private File createJpeg(boolean isLittleEndian, int orientation) throws IOException {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.write(isLittleEndian ? 'I' : 'M');
+        tiff.write(isLittleEndian ? 'I' : 'M');
+        writeShort(tiff, 0x2A, isLittleEndian);
+        writeInt(tiff, 8, isLittleEndian);
+        writeShort(tiff, 2, isLittleEndian);
+        // ImageWidth, LONG
+        writeShort(tiff, 0x0100, isLittleEndian);
+        writeShort(tiff, 4, isLittleEndian);
+        writeInt(tiff, 1, isLittleEndian);
+        writeInt(tiff, 4032, isLittleEndian);
+        // Orientation, SHORT
+        writeShort(tiff, 0x0112, isLittleEndian);
+        writeShort(tiff, 3, isLittleEndian);
+        writeInt(tiff, 1, isLittleEndian);
+        writeShort(tiff, orientation, isLittleEndian);
+        writeShort(tiff, 0, isLittleEndian);
+        writeInt(tiff, 0, isLittleEndian);
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xE0, 0, 6, 'J', 'F', 'I', 'F'});
+        byte[] tiffBytes = tiff.toByteArray();
+        int app1Length = 2 + 6 + tiffBytes.length;
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xE1, (byte) (app1Length >> 8), (byte) app1Length});
+        jpeg.write(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        jpeg.write(tiffBytes);
+        jpeg.write(IMAGE_DATA);
+
+        File file = mFolder.newFile();
+        write(file, jpeg.toByteArray());
+        return file;
+    }
+
+    private void writeShort(ByteArrayOutputStream out, int value, boolean isLittleEndian) {
+        if (isLittleEndian) {
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+        } else {
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        }
+    }
+
+    private void writeInt(ByteArrayOutputStream out, int value, boolean isLittleEndian) {
+        if (isLittleEndian) {
+            writeShort(out, value & 0xFFFF, true);
+            writeShort(out, value >>> 16, true);
+        } else {
+            writeShort(out, value >>> 16, false);
+            writeShort(out, value & 0xFFFF, false);
+        }
+    }
+
+    private byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private void write(File file, byte[] bytes) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+    }
+
+    private byte[] tail(File file, int count) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] result = new byte[count];
+            raf.seek(raf.length() - count);
+            raf.readFully(result);
+            return result;
+        } finally {
+            raf.close();
+        }
+    }
+}
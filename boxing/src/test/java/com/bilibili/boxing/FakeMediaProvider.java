@@ -0,0 +1,152 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.MediaStore.Images.Media;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A MediaStore returning the images sorted by date desc whatever the selection is, counting every query.
+ * The images added later come after the generated ones.
+ *
+ * @author ChenSL
+ */
+public class FakeMediaProvider extends ContentProvider {
+    private final int mBucketCount;
+    private final int mImagesPerBucket;
+    private int mQueryCount;
+    private int mMediaQueryCount;
+    private final List<long[]> mAddedImages = new ArrayList<>();
+    private final Set<Long> mRemovedIds = new HashSet<>();
+
+    public FakeMediaProvider(int bucketCount, int imagesPerBucket) {
+        mBucketCount = bucketCount;
+        mImagesPerBucket = imagesPerBucket;
+    }
+
+    public int getQueryCount() {
+        return mQueryCount;
+    }
+
+    /**
+     * @return the count of queries on {@link Media#EXTERNAL_CONTENT_URI}.
+     */
+    public int getMediaQueryCount() {
+        return mMediaQueryCount;
+    }
+
+    /**
+     * add an image after the generated ones, in the bucket "added".
+     */
+    public void addImage(long id, long dateModified) {
+        mAddedImages.add(new long[]{id, dateModified});
+    }
+
+    public void removeImage(long id) {
+        mRemovedIds.add(id);
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        mQueryCount++;
+        if (Media.EXTERNAL_CONTENT_URI.equals(uri)) {
+            mMediaQueryCount++;
+        }
+        MatrixCursor cursor = new MatrixCursor(projection);
+        int total = mBucketCount * mImagesPerBucket;
+        List<long[]> images = new ArrayList<>(total + mAddedImages.size());
+        for (int i = total; i > 0; i--) {
+            if (!mRemovedIds.contains((long) i)) {
+                images.add(new long[]{i, i});
+            }
+        }
+        for (long[] image : mAddedImages) {
+            if (!mRemovedIds.contains(image[0])) {
+                images.add(image);
+            }
+        }
+        if (projection[0].startsWith("count(")) {
+            long sum = 0;
+            for (long[] image : images) {
+                sum += image[0];
+            }
+            cursor.addRow(projection.length == 1 ? new Object[]{images.size()} : new Object[]{images.size(), sum});
+            return cursor;
+        }
+        for (long[] image : images) {
+            long id = image[0];
+            String bucket = id > total ? "added" : String.valueOf(id % mBucketCount);
+            Object[] row = new Object[projection.length];
+            for (int col = 0; col < projection.length; col++) {
+                row[col] = getValue(projection[col], id, image[1], bucket);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private Object getValue(String column, long id, long date, String bucket) {
+        if (Media._ID.equals(column)) {
+            return id;
+        } else if (Media.DATA.equals(column)) {
+            return "/sdcard/DCIM/" + bucket + "/" + id + ".jpg";
+        } else if (Media.BUCKET_ID.equals(column)) {
+            return bucket;
+        } else if (Media.BUCKET_DISPLAY_NAME.equals(column)) {
+            return "bucket" + bucket;
+        } else if (Media.DATE_MODIFIED.equals(column)) {
+            return date;
+        } else if (Media.MIME_TYPE.equals(column)) {
+            return "image/jpeg";
+        }
+        return 0;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+
+import com.bilibili.boxing.utils.ImageCompressor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+import org.robolectric.shadows.ShadowBitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Show the decodes per image and the wall time of {@link ImageCompressor}, re-decoding the
+ * output file for every quality step against searching the quality on the decoded bitmap.
+ *
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class,
+        shadows = {ImageCompressorBenchmarkTest.CountingBitmapFactory.class, ImageCompressorBenchmarkTest.SizedBitmap.class})
+public class ImageCompressorBenchmarkTest {
+    private static final int WIDTH = 3024;
+    private static final int HEIGHT = 4032;
+    private static final long MAX_SIZE = 300 * 1024L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mSource;
+
+    @Before
+    public void setUp() throws IOException {
+        mSource = mFolder.newFile("source.jpg");
+        FileOutputStream fos = new FileOutputStream(mSource);
+        fos.write(new byte[1024]);
+        fos.close();
+        ShadowBitmapFactory.provideWidthAndHeightHints(mSource.getAbsolutePath(), WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void testDecodeCount() throws IOException {
+        File cacheDir = mFolder.newFolder("cache");
+        CountingBitmapFactory.sDecodeCount = 0;
+        long start = System.nanoTime();
+        File legacyOut = compressByStep(new File(cacheDir, "legacy.jpg"));
+        long legacyCost = System.nanoTime() - start;
+        int legacyDecodes = CountingBitmapFactory.sDecodeCount;
+
+        CountingBitmapFactory.sDecodeCount = 0;
+        CountingBitmapFactory.sBoundsCount = 0;
+        start = System.nanoTime();
+        File out = new ImageCompressor(cacheDir).compress(mSource, MAX_SIZE);
+        long cost = System.nanoTime() - start;
+        int decodes = CountingBitmapFactory.sDecodeCount;
+        int bounds = CountingBitmapFactory.sBoundsCount;
+
+        System.out.println("step quality: decodes:" + legacyDecodes + " size:" + legacyOut.length() + " cost(us):" + legacyCost / 1000);
+        System.out.println("search quality: decodes:" + decodes + " size:" + out.length() + " cost(us):" + cost / 1000);
+
+        assertEquals(1, decodes);
+        assertEquals(1, bounds);
+        assertTrue(legacyDecodes > decodes);
+        assertTrue(out.length() < MAX_SIZE);
+        assertTrue(out.length() >= legacyOut.length());
+    }
+
+    /**
+     * the former way: save the downscaled bitmap and decode the saved file for every quality step.
+     */
+    private File compressByStep(File outFile) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 2;
+        Bitmap bitmap = BitmapFactory.decodeFile(mSource.getAbsolutePath(), options);
+        write(bitmap, 100, outFile);
+        ShadowBitmapFactory.provideWidthAndHeightHints(outFile.getAbsolutePath(), bitmap.getWidth(), bitmap.getHeight());
+        int quality = 90;
+        while (outFile.length() > MAX_SIZE && quality >= 20) {
+            Bitmap decoded = BitmapFactory.decodeFile(outFile.getAbsolutePath(), new BitmapFactory.Options());
+            write(decoded, quality, outFile);
+            quality -= 10;
+        }
+        return outFile;
+    }
+
+    private void write(Bitmap bitmap, int quality, File outFile) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, bos);
+        FileOutputStream fos = new FileOutputStream(outFile);
+        bos.writeTo(fos);
+        fos.close();
+    }
+
+    @Implements(BitmapFactory.class)
+    public static class CountingBitmapFactory extends ShadowBitmapFactory {
+        static int sDecodeCount;
+        static int sBoundsCount;
+
+        @Implementation
+        public static Bitmap decodeFile(String pathName, BitmapFactory.Options options) {
+            if (options == null || !options.inJustDecodeBounds) {
+                sDecodeCount++;
+            } else {
+                sBoundsCount++;
+            }
+            return ShadowBitmapFactory.decodeFile(pathName, options);
+        }
+
+        /**
+         * the header probe decodes the bounds from the stream it reads the orientation from.
+         */
+        @Implementation
+        public static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options options) {
+            if (options == null || !options.inJustDecodeBounds) {
+                sDecodeCount++;
+                return ShadowBitmapFactory.decodeStream(is, outPadding, options);
+            }
+            sBoundsCount++;
+            options.outWidth = WIDTH;
+            options.outHeight = HEIGHT;
+            options.outMimeType = "image/jpeg";
+            return null;
+        }
+    }
+
+    @Implements(Bitmap.class)
+    public static class SizedBitmap extends ShadowBitmap {
+
+        /**
+         * about 2 bits a pixel at the full quality, less with a lower quality.
+         */
+        @Implementation
+        @Override
+        public boolean compress(Bitmap.CompressFormat format, int quality, OutputStream stream) {
+            try {
+                stream.write(new byte[(int) ((long) getWidth() * getHeight() * quality / 400)]);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -23,12 +23,16 @@ import android.text.TextUtils;
 
 import com.bilibili.boxing.model.BoxingManager;
 import com.bilibili.boxing.model.callback.IAlbumTaskCallback;
+import com.bilibili.boxing.model.callback.IMediaPageCallback;
 import com.bilibili.boxing.model.callback.IMediaTaskCallback;
 import com.bilibili.boxing.model.config.BoxingConfig;
 import com.bilibili.boxing.model.entity.AlbumEntity;
 import com.bilibili.boxing.model.entity.BaseMedia;
 import com.bilibili.boxing.model.entity.impl.ImageMedia;
 import com.bilibili.boxing.model.entity.impl.VideoMedia;
+import com.bilibili.boxing.model.task.IMediaTask;
+import com.bilibili.boxing.model.task.MediaLoadHandle;
+import com.bilibili.boxing.model.task.PageKey;
 import com.bilibili.boxing.presenter.PickerContract;
 import com.bilibili.boxing.presenter.PickerPresenter;
 
@@ -70,7 +74,7 @@ public class PickerPresenterTest {
     private BoxingManager mPickerManager;
 
     @Captor
-    private ArgumentCaptor<IMediaTaskCallback> mLoadMediaCallback;
+    private ArgumentCaptor<IMediaPageCallback> mLoadMediaCallback;
     @Captor
     private ArgumentCaptor<IAlbumTaskCallback> mAlbumTaskCallback;
 
@@ -91,6 +95,14 @@ public class PickerPresenterTest {
                 return !(charSequence != null && charSequence.length() > 0);
             }
         });
+        PowerMockito.when(TextUtils.equals(any(CharSequence.class), any(CharSequence.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                Object a = invocation.getArguments()[0];
+                Object b = invocation.getArguments()[1];
+                return a == null ? b == null : a.equals(b);
+            }
+        });
     }
 
     @Test
@@ -171,6 +183,114 @@ public class PickerPresenterTest {
         mPresenter.checkSelectedMedia(null, null);
     }
 
+    @Test
+    public void loadNextPageByKey() {
+        Mockito.when(mPickerManager.getBoxingConfig()).thenReturn(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+        mPresenter.loadMedias(0, "");
+        Mockito.verify(mPickerManager).loadMedia(any(ContentResolver.class),
+                ArgumentCaptor.forClass(Integer.class).capture(), ArgumentCaptor.forClass(String.class).capture(), mLoadMediaCallback.capture());
+        PageKey key = new PageKey(1000L, 233L);
+        mLoadMediaCallback.getValue().postNextPageKey(key);
+        mLoadMediaCallback.getValue().postMedia(new ArrayList<ImageMedia>(), IMediaTask.PAGE_LIMIT * 2);
+
+        mPresenter.onLoadNextPage();
+        ArgumentCaptor<PageKey> keyCaptor = ArgumentCaptor.forClass(PageKey.class);
+        Mockito.verify(mPickerManager).loadMediaAfter(any(ContentResolver.class), anyInt(), keyCaptor.capture(),
+                ArgumentCaptor.forClass(String.class).capture(), mLoadMediaCallback.capture());
+        Assert.assertTrue(keyCaptor.getValue() == key);
+
+        mLoadMediaCallback.getValue().postNextPageKey(null);
+        mPresenter.loadMedias(0, "1");
+        Mockito.verify(mPickerManager, Mockito.times(2)).loadMedia(any(ContentResolver.class),
+                ArgumentCaptor.forClass(Integer.class).capture(), ArgumentCaptor.forClass(String.class).capture(), mLoadMediaCallback.capture());
+    }
+
+    @Test
+    public void dropLoadedMediaAcrossPages() {
+        Mockito.when(mPickerManager.getBoxingConfig()).thenReturn(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+        mPresenter.loadMedias(0, "");
+        Mockito.verify(mPickerManager).loadMedia(any(ContentResolver.class),
+                ArgumentCaptor.forClass(Integer.class).capture(), ArgumentCaptor.forClass(String.class).capture(), mLoadMediaCallback.capture());
+        List<ImageMedia> firstPage = new ArrayList<>();
+        firstPage.add(new ImageMedia.Builder("1", "test1").build());
+        firstPage.add(new ImageMedia.Builder("2", "test2").build());
+        List<ImageMedia> secondPage = new ArrayList<>();
+        secondPage.add(new ImageMedia.Builder("2", "test2").build());
+        secondPage.add(new ImageMedia.Builder("3", "test3").build());
+        mLoadMediaCallback.getValue().postMedia(firstPage, 3);
+        mLoadMediaCallback.getValue().postMedia(secondPage, 3);
+
+        ArgumentCaptor<List> showCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(mView, Mockito.times(2)).showMedia(showCaptor.capture(), anyInt());
+        Assert.assertTrue(showCaptor.getAllValues().get(0).size() == 2);
+        Assert.assertTrue(showCaptor.getAllValues().get(1).size() == 1);
+        Assert.assertTrue(showCaptor.getAllValues().get(1).get(0).equals(secondPage.get(1)));
+    }
+
+    @Test
+    public void cacheTotalCount() {
+        Mockito.when(mPickerManager.getBoxingConfig()).thenReturn(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+        mPresenter.loadMedias(0, "");
+        Mockito.verify(mPickerManager).loadMedia(any(ContentResolver.class),
+                ArgumentCaptor.forClass(Integer.class).capture(), ArgumentCaptor.forClass(String.class).capture(), mLoadMediaCallback.capture());
+        IMediaPageCallback callback = mLoadMediaCallback.getValue();
+        Assert.assertTrue(callback.getCachedCount() == IMediaTask.UNKNOWN_COUNT);
+        callback.postMedia(new ArrayList<ImageMedia>(), 2333);
+        Assert.assertTrue(callback.getCachedCount() == 2333);
+
+        mPresenter.onLoadNextPage();
+        Assert.assertTrue(callback.getCachedCount() == 2333);
+
+        Mockito.when(mPickerManager.getMediaGeneration(any(ContentResolver.class))).thenReturn(1);
+        mPresenter.onLoadNextPage();
+        Assert.assertTrue(callback.getCachedCount() == IMediaTask.UNKNOWN_COUNT);
+
+        callback.postMedia(new ArrayList<ImageMedia>(), 2333);
+        mPresenter.loadMedias(0, "1");
+        Assert.assertTrue(callback.getCachedCount() == IMediaTask.UNKNOWN_COUNT);
+    }
+
+    @Test
+    public void cancelStaleLoad() {
+        Mockito.when(mPickerManager.getBoxingConfig()).thenReturn(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+        MediaLoadHandle handle = Mockito.mock(MediaLoadHandle.class);
+        Mockito.when(mPickerManager.loadMedia(any(ContentResolver.class), anyInt(), any(String.class),
+                any(IMediaTaskCallback.class))).thenReturn(handle);
+        mPresenter.loadMedias(0, "1");
+        mPresenter.loadMedias(1, "1");
+        Mockito.verify(handle, Mockito.never()).cancel();
+
+        mPresenter.loadMedias(0, "2");
+        Mockito.verify(handle).cancel();
+
+        mPresenter.destroy();
+        Mockito.verify(handle, Mockito.times(2)).cancel();
+    }
+
+    @Test
+    public void dropStalePage() {
+        Mockito.when(mPickerManager.getBoxingConfig()).thenReturn(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+        MediaLoadHandle handle = Mockito.mock(MediaLoadHandle.class);
+        Mockito.when(handle.isDone()).thenReturn(true);
+        Mockito.when(mPickerManager.loadMedia(any(ContentResolver.class), anyInt(), any(String.class),
+                mLoadMediaCallback.capture())).thenReturn(handle);
+        mPresenter.loadMedias(0, "1");
+        IMediaPageCallback staleCallback = mLoadMediaCallback.getValue();
+
+        // done in the worker but not posted yet, still cancelled by the new album.
+        mPresenter.loadMedias(0, "2");
+        Mockito.verify(handle).cancel();
+
+        List<ImageMedia> stalePage = new ArrayList<>();
+        stalePage.add(new ImageMedia.Builder("1", "test1").build());
+        staleCallback.postMedia(stalePage, 1);
+        staleCallback.postNextPageKey(new PageKey(1000L, 1L));
+        Mockito.verify(mView, Mockito.never()).showMedia(any(List.class), anyInt());
+
+        mLoadMediaCallback.getValue().postMedia(stalePage, 1);
+        Mockito.verify(mView).showMedia(any(List.class), anyInt());
+    }
+
     @Test
     public void loadNextPage() {
         mPresenter.onLoadNextPage();
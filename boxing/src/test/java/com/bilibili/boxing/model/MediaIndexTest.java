@@ -0,0 +1,203 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model;
+
+import android.content.ContentResolver;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.MediaStore;
+
+import com.bilibili.boxing.BuildConfig;
+import com.bilibili.boxing.FakeMediaProvider;
+import com.bilibili.boxing.model.callback.IAlbumTaskCallback;
+import com.bilibili.boxing.model.callback.IMediaChangedListener;
+import com.bilibili.boxing.model.callback.IMediaTaskCallback;
+import com.bilibili.boxing.model.config.BoxingConfig;
+import com.bilibili.boxing.model.entity.AlbumEntity;
+import com.bilibili.boxing.model.entity.impl.ImageMedia;
+import com.bilibili.boxing.model.task.impl.AlbumTask;
+import com.bilibili.boxing.model.task.impl.ImageTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare a cold open against MediaStore with a warm open against {@link MediaIndex}.
+ *
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class MediaIndexTest {
+    private static final int BUCKET_COUNT = 20;
+    private static final int IMAGES_PER_BUCKET = 100;
+
+    private ContentResolver mContentResolver;
+    private FakeMediaProvider mProvider;
+
+    @Before
+    public void setUp() {
+        BoxingManager.getInstance().setBoxingConfig(new BoxingConfig(BoxingConfig.Mode.MULTI_IMG));
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        mProvider = new FakeMediaProvider(BUCKET_COUNT, IMAGES_PER_BUCKET);
+        ShadowContentResolver.registerProvider(MediaStore.AUTHORITY, mProvider);
+        MediaIndex.getInstance().init(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        MediaIndex.getInstance().release();
+        SQLiteDatabase.deleteDatabase(new File(RuntimeEnvironment.application.getCacheDir(), "boxing/media_index.db"));
+    }
+
+    @Test
+    public void testWarmOpen() {
+        long start = System.nanoTime();
+        List<ImageMedia> cold = loadFirstPage();
+        long coldUs = (System.nanoTime() - start) / 1000;
+        int coldQueries = mProvider.getMediaQueryCount();
+        assertTrue(coldQueries > 0);
+
+        assertTrue(MediaIndex.getInstance().reconcile(mContentResolver));
+        assertFalse(MediaIndex.getInstance().reconcile(mContentResolver));
+
+        int queries = mProvider.getMediaQueryCount();
+        start = System.nanoTime();
+        List<ImageMedia> warm = loadFirstPage();
+        List<AlbumEntity> albums = loadAlbums();
+        long warmUs = (System.nanoTime() - start) / 1000;
+        System.out.println("cold(us):" + coldUs + " queries:" + coldQueries + " warm(us):" + warmUs);
+
+        assertEquals(queries, mProvider.getMediaQueryCount());
+        assertEquals(cold.size(), warm.size());
+        assertEquals(cold.get(0).getPath(), warm.get(0).getPath());
+        assertEquals(BUCKET_COUNT + 1, albums.size());
+        assertEquals(BUCKET_COUNT * IMAGES_PER_BUCKET, albums.get(0).mCount);
+    }
+
+    @Test
+    public void testReconcileOlderImages() {
+        MediaIndex index = MediaIndex.getInstance();
+        int total = BUCKET_COUNT * IMAGES_PER_BUCKET;
+        assertTrue(index.reconcile(mContentResolver));
+
+        // copied with an old date, and moved to a new id with the date kept.
+        mProvider.addImage(total + 1, 1);
+        mProvider.removeImage(10);
+        mProvider.addImage(total + 2, 10);
+        assertTrue(index.reconcile(mContentResolver));
+        assertFalse(index.reconcile(mContentResolver));
+
+        List<AlbumEntity> albums = loadAlbums();
+        assertEquals(total + 1, albums.get(0).mCount);
+        AlbumEntity added = null;
+        for (AlbumEntity album : albums) {
+            if ("added".equals(album.mBucketId)) {
+                added = album;
+            }
+        }
+        assertTrue(added != null);
+        assertEquals(2, added.mCount);
+    }
+
+    @Test
+    public void testWarmOpenFindsImagesAddedWhileClosed() throws Exception {
+        MediaIndex index = MediaIndex.getInstance();
+        int total = BUCKET_COUNT * IMAGES_PER_BUCKET;
+        assertTrue(index.reconcile(mContentResolver));
+
+        // taken while the picker is closed, the newest one.
+        mProvider.addImage(total + 1, total + 1);
+        String path = "/sdcard/DCIM/added/" + (total + 1) + ".jpg";
+        // the warm open is served from the stale index at once.
+        assertFalse(containsPath(loadFirstPage(), path));
+
+        final CountDownLatch indexChanged = new CountDownLatch(1);
+        IMediaChangedListener listener = new IMediaChangedListener() {
+            @Override
+            public void onMediaChanged() {
+            }
+
+            @Override
+            public void onMediaIndexChanged() {
+                indexChanged.countDown();
+            }
+        };
+        BoxingManager.getInstance().addMediaChangedListener(mContentResolver, listener);
+        try {
+            index.reconcileIfNeeded(mContentResolver);
+            assertTrue(indexChanged.await(5, TimeUnit.SECONDS));
+        } finally {
+            BoxingManager.getInstance().removeMediaChangedListener(listener);
+        }
+
+        // the first page loaded again by the listener has it now.
+        List<ImageMedia> reloaded = loadFirstPage();
+        assertEquals(path, reloaded.get(0).getPath());
+    }
+
+    private static boolean containsPath(List<ImageMedia> medias, String path) {
+        for (ImageMedia media : medias) {
+            if (path.equals(media.getPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<ImageMedia> loadFirstPage() {
+        final List<ImageMedia> result = new ArrayList<>();
+        new ImageTask().load(mContentResolver, 0, null, new IMediaTaskCallback<ImageMedia>() {
+            @Override
+            public void postMedia(List<ImageMedia> medias, int count) {
+                result.addAll(medias);
+            }
+
+            @Override
+            public boolean needFilter(String path) {
+                return false;
+            }
+        });
+        return result;
+    }
+
+    private List<AlbumEntity> loadAlbums() {
+        final List<AlbumEntity> result = new ArrayList<>();
+        new AlbumTask().start(mContentResolver, new IAlbumTaskCallback() {
+            @Override
+            public void postAlbumList(List<AlbumEntity> list) {
+                result.addAll(list);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model;
+
+import com.bilibili.boxing.BuildConfig;
+import com.bilibili.boxing.model.entity.BaseMedia;
+import com.bilibili.boxing.model.entity.impl.ImageMedia;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class MediaSelectionTest {
+
+    @Test
+    public void testAddAndRemove() {
+        MediaSelection selection = new MediaSelection();
+        ImageMedia media = new ImageMedia("1", "/sdcard/1.jpg");
+        assertTrue(selection.add(media));
+        assertFalse(selection.add(media));
+        assertEquals(1, selection.size());
+
+        // keyed by the id, not the instance.
+        assertTrue(selection.contains(new ImageMedia("1", "/sdcard/1.jpg")));
+        assertFalse(selection.contains(new ImageMedia("2", "/sdcard/2.jpg")));
+        assertFalse(selection.contains(null));
+
+        assertTrue(selection.remove(new ImageMedia("1", "/sdcard/1.jpg")));
+        assertFalse(selection.remove(media));
+        assertFalse(selection.contains(media));
+        assertTrue(selection.isEmpty());
+    }
+
+    @Test
+    public void testOrderOfSelecting() {
+        MediaSelection selection = new MediaSelection();
+        ImageMedia first = new ImageMedia("30", "/sdcard/30.jpg");
+        ImageMedia second = new ImageMedia("10", "/sdcard/10.jpg");
+        ImageMedia third = new ImageMedia("20", "/sdcard/20.jpg");
+        selection.add(first);
+        selection.add(second);
+        selection.add(third);
+        selection.remove(second);
+
+        List<BaseMedia> medias = selection.getMedias();
+        assertEquals(2, medias.size());
+        assertEquals(first, medias.get(0));
+        assertEquals(third, medias.get(1));
+
+        // a copy, changing it changes no selection.
+        medias.clear();
+        assertEquals(2, selection.size());
+    }
+
+    @Test
+    public void testKeyOfPath() {
+        MediaSelection selection = new MediaSelection();
+        ImageMedia zero = new ImageMedia("0", "/sdcard/0.jpg");
+        ImageMedia noId = new ImageMedia("camera", "/sdcard/camera.jpg");
+        selection.add(zero);
+        selection.add(noId);
+
+        assertTrue(selection.contains(zero));
+        assertTrue(selection.contains(new ImageMedia("tmp", "/sdcard/camera.jpg")));
+        assertFalse(selection.contains(new ImageMedia("tmp", "/sdcard/other.jpg")));
+        assertTrue(selection.remove(noId));
+        assertFalse(selection.contains(noId));
+        assertTrue(selection.contains(zero));
+    }
+
+    @Test
+    public void testSetAndCopy() {
+        List<BaseMedia> medias = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            medias.add(new ImageMedia(String.valueOf(i), "/sdcard/" + i + ".jpg"));
+        }
+        medias.add(null);
+        MediaSelection selection = new MediaSelection();
+        selection.add(new ImageMedia("5000", "/sdcard/5000.jpg"));
+        selection.set(medias);
+        assertEquals(1000, selection.size());
+        assertFalse(selection.contains(new ImageMedia("5000", "/sdcard/5000.jpg")));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(selection.contains(medias.get(i)));
+        }
+
+        MediaSelection copy = new MediaSelection(selection);
+        copy.remove(medias.get(0));
+        assertTrue(selection.contains(medias.get(0)));
+        assertFalse(copy.contains(medias.get(0)));
+        assertEquals(999, copy.size());
+
+        selection.set(null);
+        assertTrue(selection.isEmpty());
+        assertEquals(999, copy.size());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.model.task.impl;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.MediaStore.Images;
+
+import com.bilibili.boxing.BuildConfig;
+import com.bilibili.boxing.model.entity.impl.ImageMedia;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Show the time and the allocation per row of mapping a cursor to {@link ImageMedia},
+ * looking up the columns per row with a builder against {@link ImageCursorMapper}.
+ *
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class CursorMapperBenchmarkTest {
+    private static final int ROW_COUNT = 100000;
+    private static final String[] COLUMNS = {Images.Media._ID, Images.Media.DATA, Images.Media.SIZE,
+            Images.Media.MIME_TYPE, Images.Media.WIDTH, Images.Media.HEIGHT};
+
+    @Test
+    public void testMapRows() {
+        MatrixCursor cursor = createCursor();
+        // warm up both paths before measuring.
+        mapByBuilder(cursor);
+        mapByMapper(cursor);
+
+        long builderStart = System.nanoTime();
+        long builderBytes = allocatedBytes();
+        long builderSize = mapByBuilder(cursor);
+        builderBytes = allocatedBytes() - builderBytes;
+        long builderCost = System.nanoTime() - builderStart;
+
+        long mapperStart = System.nanoTime();
+        long mapperBytes = allocatedBytes();
+        long mapperSize = mapByMapper(cursor);
+        mapperBytes = allocatedBytes() - mapperBytes;
+        long mapperCost = System.nanoTime() - mapperStart;
+
+        System.out.println("builder: " + builderCost / ROW_COUNT + "ns/row " + builderBytes / ROW_COUNT + "B/row");
+        System.out.println("mapper: " + mapperCost / ROW_COUNT + "ns/row " + mapperBytes / ROW_COUNT + "B/row");
+
+        assertEquals(builderSize, mapperSize);
+        if (builderBytes > 0) {
+            assertTrue(mapperBytes < builderBytes);
+        }
+    }
+
+    private MatrixCursor createCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            cursor.addRow(new Object[]{(long) i, "/sdcard/DCIM/" + i + ".jpg", 1024L + i, "image/jpeg", 1080, 1920});
+        }
+        return cursor;
+    }
+
+    private long mapByBuilder(Cursor cursor) {
+        long totalSize = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            String path = cursor.getString(cursor.getColumnIndex(Images.Media.DATA));
+            String id = cursor.getString(cursor.getColumnIndex(Images.Media._ID));
+            String size = cursor.getString(cursor.getColumnIndex(Images.Media.SIZE));
+            String mimeType = cursor.getString(cursor.getColumnIndex(Images.Media.MIME_TYPE));
+            int width = cursor.getInt(cursor.getColumnIndex(Images.Media.WIDTH));
+            int height = cursor.getInt(cursor.getColumnIndex(Images.Media.HEIGHT));
+            ImageMedia media = new ImageMedia.Builder(id, path).setSize(size).setMimeType(mimeType)
+                    .setWidth(width).setHeight(height).build();
+            totalSize += media.getSize();
+        }
+        return totalSize;
+    }
+
+    private long mapByMapper(Cursor cursor) {
+        long totalSize = 0;
+        ImageCursorMapper mapper = new ImageCursorMapper(cursor);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            ImageMedia media = mapper.map(cursor, mapper.getPath(cursor), null);
+            totalSize += media.getSize();
+        }
+        return totalSize;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread, 0 if the vm can not tell.
+     */
+    private long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
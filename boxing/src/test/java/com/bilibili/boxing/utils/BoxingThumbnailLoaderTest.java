@@ -0,0 +1,176 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.widget.ImageView;
+
+import com.bilibili.boxing.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class BoxingThumbnailLoaderTest {
+    private static final String PATH = "/sdcard/DCIM/a.jpg";
+    private static final int SIZE = 50;
+    private static final long TIMEOUT_MS = 5000;
+
+    private BlockingLoader mLoader;
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+        mLoader = new BlockingLoader(mContext);
+    }
+
+    @Test
+    public void testSameThumbnailDecodedOnce() throws Exception {
+        ImageView first = new ImageView(mContext);
+        ImageView second = new ImageView(mContext);
+        mLoader.displayThumbnail(first, PATH, SIZE, SIZE);
+        mLoader.displayThumbnail(second, PATH, SIZE, SIZE);
+        mLoader.mRelease.countDown();
+        waitForImage(first);
+        waitForImage(second);
+
+        assertEquals(1, mLoader.mDecodeCount.get());
+        assertSame(getBitmap(first), getBitmap(second));
+
+        // from the memory at once.
+        ImageView third = new ImageView(mContext);
+        mLoader.displayThumbnail(third, PATH, SIZE, SIZE);
+        assertSame(getBitmap(first), getBitmap(third));
+        assertEquals(1, mLoader.mDecodeCount.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ImageView canceled = new ImageView(mContext);
+        ImageView other = new ImageView(mContext);
+        mLoader.displayThumbnail(canceled, PATH, SIZE, SIZE);
+        mLoader.displayThumbnail(other, PATH, SIZE, SIZE);
+        assertTrue(mLoader.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        mLoader.cancel(canceled);
+        mLoader.mRelease.countDown();
+        waitForImage(other);
+
+        // the other target keeps the request.
+        assertNull(canceled.getDrawable());
+        assertEquals(1, mLoader.mDecodeCount.get());
+    }
+
+    @Test
+    public void testCancelAllTargets() throws Exception {
+        ImageView img = new ImageView(mContext);
+        mLoader.displayThumbnail(img, PATH, SIZE, SIZE);
+        assertTrue(mLoader.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        mLoader.cancel(img);
+        // the canceled request is not shared any more.
+        mLoader.displayThumbnail(img, PATH, SIZE, SIZE);
+        mLoader.mRelease.countDown();
+        waitForImage(img);
+
+        assertEquals(2, mLoader.mDecodeCount.get());
+    }
+
+    @Test
+    public void testPrefetchPromoted() throws Exception {
+        mLoader.prefetchThumbnail(mContext, PATH, SIZE, SIZE);
+        assertTrue(mLoader.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        ImageView img = new ImageView(mContext);
+        mLoader.displayThumbnail(img, PATH, SIZE, SIZE);
+        // displayed already, scrolling away from the prefetched one does not cancel it.
+        mLoader.cancelPrefetch(PATH);
+        mLoader.mRelease.countDown();
+        waitForImage(img);
+
+        assertEquals(1, mLoader.mDecodeCount.get());
+    }
+
+    @Test
+    public void testCancelPrefetch() throws Exception {
+        mLoader.prefetchThumbnail(mContext, PATH, SIZE, SIZE);
+        assertTrue(mLoader.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        mLoader.cancelPrefetch(PATH);
+        ImageView img = new ImageView(mContext);
+        mLoader.displayThumbnail(img, PATH, SIZE, SIZE);
+        mLoader.mRelease.countDown();
+        waitForImage(img);
+
+        assertEquals(2, mLoader.mDecodeCount.get());
+    }
+
+    private static void waitForImage(ImageView img) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (img.getDrawable() == null && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(10);
+        }
+        assertNotNull(img.getDrawable());
+    }
+
+    private static Bitmap getBitmap(ImageView img) {
+        return ((BitmapDrawable) img.getDrawable()).getBitmap();
+    }
+
+    /**
+     * decodes a blank bitmap once released, counting the decoding.
+     */
+    private static class BlockingLoader extends BoxingThumbnailLoader {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final AtomicInteger mDecodeCount = new AtomicInteger();
+
+        BlockingLoader(Context context) {
+            super(context);
+        }
+
+        @Override
+        Bitmap decode(String path, int width, int height, boolean isRaw) {
+            mDecodeCount.incrementAndGet();
+            mStarted.countDown();
+            try {
+                mRelease.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+            }
+            return Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import com.bilibili.boxing.BuildConfig;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class CompressCacheTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        File dir = mFolder.newFolder();
+        CompressCache cache = new CompressCache(dir);
+        cache.setMaxSize(300);
+        put(cache, "a", 100);
+        put(cache, "b", 100);
+        put(cache, "c", 100);
+        assertNotNull(cache.get("a"));
+        put(cache, "d", 100);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertFalse(cache.getFile("b").exists());
+        assertEquals(300, cache.getSize());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testReopenFromJournal() throws IOException {
+        File dir = mFolder.newFolder();
+        CompressCache cache = new CompressCache(dir);
+        cache.setMaxSize(1000);
+        put(cache, "a", 100);
+        put(cache, "b", 200);
+        assertNotNull(cache.get("a"));
+        cache.remove("b");
+
+        CompressCache reopened = new CompressCache(dir);
+        reopened.setMaxSize(1000);
+        assertEquals(100, reopened.getSize());
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertEquals(0.5f, reopened.getHitRate(), 0.001f);
+    }
+
+    @Test
+    public void testDropMissingFile() throws IOException {
+        File dir = mFolder.newFolder();
+        CompressCache cache = new CompressCache(dir);
+        put(cache, "a", 100);
+        assertTrue(cache.getFile("a").delete());
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    private void put(CompressCache cache, String key, int size) throws IOException {
+        File file = cache.getFile(key);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(new byte[size]);
+        } finally {
+            fos.close();
+        }
+        cache.put(key, file);
+    }
+}
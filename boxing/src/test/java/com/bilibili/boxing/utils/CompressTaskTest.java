@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2017 Bilibili
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.bilibili.boxing.utils;
+
+import android.support.annotation.NonNull;
+
+import com.bilibili.boxing.BuildConfig;
+import com.bilibili.boxing.model.entity.impl.ImageMedia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ChenSL
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, constants = BuildConfig.class)
+public class CompressTaskTest {
+    private static final long MAX_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompressAll() throws Exception {
+        File dir = mFolder.newFolder();
+        List<ImageMedia> images = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            images.add(newImage(dir, "small" + i, 100));
+        }
+        List<ImageMedia> larges = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            larges.add(newImage(dir, "large" + i, MAX_SIZE * 2));
+        }
+        images.addAll(larges);
+        images.add(new ImageMedia("missing", new File(dir, "missing").getAbsolutePath()));
+
+        FailingCompressor compressor = new FailingCompressor(dir);
+        final AtomicInteger progressCount = new AtomicInteger();
+        final AtomicInteger failCount = new AtomicInteger();
+        final AtomicInteger successCount = new AtomicInteger(-1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        CompressTask.compressAll(compressor, images, MAX_SIZE, new CompressTask.Callback() {
+            @Override
+            public void onProgress(@NonNull ImageMedia image, boolean success, int finishedCount, int totalCount) {
+                progressCount.incrementAndGet();
+                if (!success) {
+                    failCount.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onComplete(@NonNull List<ImageMedia> images, int count) {
+                successCount.set(count);
+                completed.countDown();
+            }
+        });
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!completed.await(10, TimeUnit.MILLISECONDS) && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+        }
+
+        assertEquals(0, completed.getCount());
+        assertEquals(images.size(), progressCount.get());
+        assertEquals(larges.size() + 1, failCount.get());
+        assertEquals(6, successCount.get());
+        assertEquals(images.get(0).getPath(), images.get(0).getCompressPath());
+        for (ImageMedia large : larges) {
+            assertNull(large.getCompressPath());
+        }
+        // a thread of the decode pool is left to the others.
+        assertTrue(compressor.mMaxRunning.get() <= BoxingExecutor.Pool.DECODE.getSize() - 1);
+    }
+
+    private ImageMedia newImage(File dir, String name, long size) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[(int) size]);
+        } finally {
+            out.close();
+        }
+        ImageMedia image = new ImageMedia(name, file.getAbsolutePath());
+        image.setSize(size);
+        return image;
+    }
+
+    /**
+     * fails with an exception not thrown by the compressor usually.
+     */
+    private static class FailingCompressor extends ImageCompressor {
+        final AtomicInteger mRunning = new AtomicInteger();
+        final AtomicInteger mMaxRunning = new AtomicInteger();
+
+        FailingCompressor(File dir) {
+            super(dir);
+        }
+
+        @Override
+        public File compress(@NonNull File file, long maxsize) {
+            int running = mRunning.incrementAndGet();
+            while (true) {
+                int max = mMaxRunning.get();
+                if (running <= max || mMaxRunning.compareAndSet(max, running)) {
+                    break;
+                }
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignore) {
+            }
+            mRunning.decrementAndGet();
+            throw new IllegalStateException("fail to compress " + file);
+        }
+    }
+}